@@ -0,0 +1,13 @@
+package com.sjsu.physics.collisiondetection;
+
+import com.sjsu.physics.shapes.RigidBody;
+
+/*
+ * Called for every body a broadphase query finds.
+ * Return false to end the query early, true to keep going.
+ * Queries allocate nothing, so keep one visitor and reuse it.
+ */
+public interface BodyVisitor
+{
+	boolean visit(RigidBody body);
+}
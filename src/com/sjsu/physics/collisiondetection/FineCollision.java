@@ -1,14 +1,16 @@
 package com.sjsu.physics.collisiondetection;
 
-import java.util.ArrayList;
+import java.awt.Polygon;
 
 import com.sjsu.physics.core.Contact;
+import com.sjsu.physics.core.ContactBuffer;
 import com.sjsu.physics.shapes.BoundingBox;
 import com.sjsu.physics.shapes.Circle;
 import com.sjsu.physics.shapes.PolyBody;
 import com.sjsu.physics.shapes.RigidBody;
 import com.sjsu.physics.shapes.RigidBody.BodyType;
 import com.sjsu.physics.utils.Globals;
+import com.sjsu.physics.utils.StateMatrix;
 import com.sjsu.physics.utils.Vector2;
 
 /**
@@ -19,314 +21,539 @@ import com.sjsu.physics.utils.Vector2;
  */
 public class FineCollision
 {
-	/** Check for a collision between a and b, fill contact list with any contacts found */
-	public static void getContactPoints(RigidBody a, RigidBody b, ArrayList<Contact> contacts)
+	/** Check for a collision between a and b, fill contact buffer with any contacts found */
+	public static void getContactPoints(RigidBody a, RigidBody b, ContactBuffer contacts)
+	{
+		getContactPoints(a, b, contacts, 0);
+	}
+
+	/**
+	 * As above, but a and b may also be up to margin apart. Such a pair gets a speculative contact
+	 * holding the gap between them (its separation) instead of a penetration, and the solver only
+	 * stops them closing that gap faster than one step. The margin is how far the pair can move
+	 * towards each other this step, see speculativeMargin
+	 */
+	public static void getContactPoints(RigidBody a, RigidBody b, ContactBuffer contacts, float margin)
 	{
 		// if both objects are infinity then we do nothing
 		if (a.inverseMass() == 0 && b.inverseMass() == 0)
 			return;
 
 		// Early-out check to make sure boundingCircles are intersecting
-		if (!boxesAreColliding(a, b))
+		if (!boxesAreColliding(a, b, margin))
 			return;
 
 		// make sure we don't already have this contact stored
-		if (contactsContainContact(contacts, a, b))
+		if (contacts.containsPair(a, b))
 			return;
 
-		Contact contact = handleGenericCollision(a, b);
-		if (contact != null)
-			contacts.add(contact);
-
-		return;
+		handleGenericCollision(a, b, contacts, margin);
 	}
 
-	/** We handle different collisions differently based on input object types */
-	private static Contact handleGenericCollision(RigidBody a, RigidBody b)
+	/** Check if a and b overlap without working out a contact, for sensors. The contact buffer only lends its scratch arrays */
+	public static boolean overlaps(RigidBody a, RigidBody b, ContactBuffer contacts)
 	{
-		Contact contact = null;
+		if (!boxesAreColliding(a, b, 0))
+			return false;
 
 		if (a.type() == BodyType.CIRCLE && b.type() == BodyType.CIRCLE)
-			contact = circleCircle((Circle) a, (Circle) b);
+		{
+			float r = a.bounds().radius() + b.bounds().radius();
+			return Vector2.distanceSquared(a.center().x, a.center().y, b.center().x, b.center().y) < r * r;
+		}
 		else if (a.type() == BodyType.CIRCLE && b.type() == BodyType.POLYGON)
-			contact = circlePolygon((Circle) a, (PolyBody) b);
+			return circleOverlapsPolygon((Circle) a, (PolyBody) b, contacts);
 		else if (a.type() == BodyType.POLYGON && b.type() == BodyType.CIRCLE)
-			contact = circlePolygon((Circle) b, (PolyBody) a);
+			return circleOverlapsPolygon((Circle) b, (PolyBody) a, contacts);
 		else if (a.type() == BodyType.POLYGON && b.type() == BodyType.POLYGON)
-			contact = polygonPolygon((PolyBody) a, (PolyBody) b);
+			return polygonsOverlap((PolyBody) a, (PolyBody) b, contacts);
 		else
 			throw new IndexOutOfBoundsException("Unknown collision enum");
-
-		return contact;
 	}
 
-	/** Check if our contact list contains body a and b already to avoid multithreading multiple adds */
-	private static boolean contactsContainContact(ArrayList<Contact> contacts, RigidBody a, RigidBody b)
+	/** How far body b can move in one step of dt, a pair's speculative margin is the sum of theirs */
+	public static float speculativeMargin(RigidBody b, float dt)
 	{
-		for (int i = 0; i < contacts.size(); i++)
-		{
-			if ((contacts.get(i).a() == a || contacts.get(i).a() == b) &&
-					(contacts.get(i).b() == a || contacts.get(i).b() == b) )
-					return true;
-		}
+		return b.velocity().magnitude() * dt;
+	}
 
-		return false;
+	/** We handle different collisions differently based on input object types */
+	private static void handleGenericCollision(RigidBody a, RigidBody b, ContactBuffer contacts, float margin)
+	{
+		if (a.type() == BodyType.CIRCLE && b.type() == BodyType.CIRCLE)
+			circleCircle((Circle) a, (Circle) b, contacts, margin);
+		else if (a.type() == BodyType.CIRCLE && b.type() == BodyType.POLYGON)
+			circlePolygon((Circle) a, (PolyBody) b, contacts, margin);
+		else if (a.type() == BodyType.POLYGON && b.type() == BodyType.CIRCLE)
+			circlePolygon((Circle) b, (PolyBody) a, contacts, margin);
+		else if (a.type() == BodyType.POLYGON && b.type() == BodyType.POLYGON)
+			polygonPolygon((PolyBody) a, (PolyBody) b, contacts, margin);
+		else
+			throw new IndexOutOfBoundsException("Unknown collision enum");
 	}
 
-	/** Check if two bounding Circles are colliding */
-	private static boolean boxesAreColliding(RigidBody aR, RigidBody bR)
+	/** Check if two bounding boxes are colliding, or within margin of each other */
+	private static boolean boxesAreColliding(RigidBody aR, RigidBody bR, float margin)
 	{
 		BoundingBox a = aR.bounds();
 		BoundingBox b = bR.bounds();
 
-		if ((a.leftX(aR.center()) < b.rightX(bR.center()))
-				&& (a.rightX(aR.center()) > b.leftX(bR.center()))
-				&& (a.topY(aR.center()) < b.bottomY(bR.center()))
-				&& (a.bottomY(aR.center()) > b.topY(bR.center())))
+		if ((a.leftX(aR.center()) - margin < b.rightX(bR.center()))
+				&& (a.rightX(aR.center()) + margin > b.leftX(bR.center()))
+				&& (a.topY(aR.center()) - margin < b.bottomY(bR.center()))
+				&& (a.bottomY(aR.center()) + margin > b.topY(bR.center())))
 			return true;
 
 		return false;
 	}
 
 	/** Collision detection for circle and circle */
-	private static Contact circleCircle(Circle a, Circle b)
+	private static void circleCircle(Circle a, Circle b, ContactBuffer contacts, float margin)
 	{
-		Contact contact = null;
 		float radiusA = a.bounds().radius();
 		float radiusB = b.bounds().radius();
-		Vector2 AB = b.center().subtractBy(a.center());
-		float radiiSquare = radiusA * radiusA + radiusB * radiusB;
+		float abX = b.center().x - a.center().x;
+		float abY = b.center().y - a.center().y;
+		float reach = radiusA + radiusB + margin;
+		float distSquared = Vector2.magnitudeSquared(abX, abY);
 
-		// if ||A-B||^2 < (r1 + r2) ^2 then we have a circle collision
+		// if ||A-B||^2 < (r1 + r2 + margin) ^2 then we have a circle collision
 		// (ie if the distance between two circles is smaller than their radii)
-		if (AB.magnitudeSquared() < radiiSquare)
+		if (distSquared < reach * reach)
 		{
 			// Find penetration ( = RadiusA + RadiusB - |A - B| )
-			float penetration = radiusA + radiusB - AB.magnitude();
-
-			// Find normal (normal = A - B / (magnitude (A-B) )
-			Vector2 normal = AB.normalize();
+			float dist = (float) Math.sqrt(distSquared);
+			float penetration = radiusA + radiusB - dist;
+
+			// Find normal (normal = A - B / (magnitude (A-B) ). Centers on top of each other
+			// have no direction between them, push them apart along x rather than divide by 0
+			float normalX = 1;
+			float normalY = 0;
+			if (dist >= Globals.EPSILON)
+			{
+				normalX = abX / dist;
+				normalY = abY / dist;
+			}
 
 			// Find contact point ( = CenterA + radiusA * normal )
-			Vector2 contactPoint = normal.multiplyBy(radiusA).addTo(a.center());
+			Contact contact = contacts.obtain(a, b, contacts.restitution(), penetration);
+			contact.setNormal(normalX, normalY);
+			contact.setContactPoint(a.center().x + normalX * radiusA, a.center().y + normalY * radiusA);
 
-			contact = new Contact(a, b, Globals.DEFAULT_RESTITUTION, penetration);
-			contact.setNormal(normal);
-			contact.setContactPoint(contactPoint);
+			// not touching yet, only within the margin
+			if (penetration < 0)
+			{
+				contact.setPenetration(0);
+				contact.setSeparation(-penetration);
+			}
 		}
-
-		return contact;
 	}
 
 	/** Collision between a circle and a plane/edge */
-	private static Contact circlePolygon(Circle circle, PolyBody polygon)
+	private static void circlePolygon(Circle circle, PolyBody polygon, ContactBuffer contacts, float margin)
 	{
-		Contact contact = null;
-		Vector2 contactPoint = null;
-		Vector2 contactNormal = null;
 		float radiusC = circle.bounds().radius();
 		Vector2 centerC = circle.center();
-		ArrayList<Vector2> vertices = polygon.verticesWorld();
+
+		int n = polygon.numVertices();
+		float[] verticesX = contacts.scratch(0, n);
+		float[] verticesY = contacts.scratch(1, n);
+		polygon.verticesWorld(verticesX, verticesY);
 
 		// Now fine the closest point on the polygon's edge to the circle's center
-		float minDist = Globals.INFINITY;
-		for (int i = 0; i < polygon.numVertices(); i++)
+		float minDistSquared = Globals.INFINITY;
+		int closestEdge = -1;
+		for (int i = 0; i < n; i++)
 		{
-			Vector2 v0 = vertices.get(i);
-			Vector2 v1 = vertices.get(((i + 1) % polygon.numVertices()));
-			float dist = centerC.minimumDistanceToLine(v0, v1);
-			if (Math.abs(dist) < minDist)
+			int j = (i + 1) % n;
+			float distSquared = Vector2.distanceToEdgeSquared(centerC.x, centerC.y, verticesX[i], verticesY[i],
+					verticesX[j], verticesY[j]);
+			if (distSquared < minDistSquared)
 			{
-				minDist = dist;
+				minDistSquared = distSquared;
+				closestEdge = i;
+			}
+		}
 
-				// normal will always be the face normal of the edge
-				contactNormal = polygon.normalWorld(i).normalize().invert();
+		if (closestEdge == -1)
+			return;
 
-				// contactPoint will be the center circle - the normal * radius
-				contactPoint = centerC.subtractBy(contactNormal.multiplyBy(radiusC));
+		// fill a pooled contact in place, we give it back below if there is no penetration
+		Contact contact = contacts.obtain(circle, polygon, contacts.restitution(), 0);
+		Vector2 contactPoint = contact.contactPoint();
+		Vector2 contactNormal = contact.normal();
+		int i = closestEdge;
+		int j = (i + 1) % n;
 
-				// clamp it to the edge
-				contactPoint = contactPoint.projectPointOntoEdge(v0, v1);
-			}
-		}
+		// normal will always be the face normal of the edge, rotated with the cached cos / sin
+		contactNormal.set(polygon.normal(i));
+		polygon.state().rotateByToOut(contactNormal, contactNormal);
+		contactNormal.normalizeLocal();
+		contactNormal.invertLocal();
+
+		// contactPoint will be the center circle - the normal * radius
+		Vector2.addScaledToOut(centerC, contactNormal, -radiusC, contactPoint);
+
+		// clamp it to the edge
+		Vector2.projectPointOntoEdgeToOut(contactPoint.x, contactPoint.y, verticesX[i], verticesY[i],
+				verticesX[j], verticesY[j], contactPoint);
 
 		// penetration is the difference in distance from center to contactPoint
 		// and radius, if we are not penetrating we can bail early
-		float penetration = (centerC.subtractBy(contactPoint).magnitudeSquared()) - (radiusC * radiusC);
+		float penetration = Vector2.distanceSquared(centerC.x, centerC.y, contactPoint.x, contactPoint.y)
+				- (radiusC * radiusC);
 		if (penetration > 0)
-			return null;
+		{
+			// apart, but if the gap is within the margin it becomes a speculative contact along it
+			float gap = (float) Math.sqrt(Vector2.distanceSquared(centerC.x, centerC.y, contactPoint.x, contactPoint.y));
+			if (gap - radiusC >= margin || gap < Globals.EPSILON)
+			{
+				contacts.discardLast();
+				return;
+			}
+
+			contactNormal.set((contactPoint.x - centerC.x) / gap, (contactPoint.y - centerC.y) / gap);
+			contact.setSeparation(gap - radiusC);
+			return;
+		}
+
+		contact.setPenetration(penetration);
+	}
+
+	/** The circle overlaps the polygon if its center is inside it or within its radius of an edge */
+	private static boolean circleOverlapsPolygon(Circle circle, PolyBody polygon, ContactBuffer contacts)
+	{
+		Vector2 centerC = circle.center();
+		if (polygon.containsPoint(centerC.x, centerC.y))
+			return true;
+
+		int n = polygon.numVertices();
+		float[] verticesX = contacts.scratch(0, n);
+		float[] verticesY = contacts.scratch(1, n);
+		polygon.verticesWorld(verticesX, verticesY);
+
+		float radiusSquared = circle.bounds().radius() * circle.bounds().radius();
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			if (Vector2.distanceToEdgeSquared(centerC.x, centerC.y, verticesX[i], verticesY[i], verticesX[j],
+					verticesY[j]) < radiusSquared)
+				return true;
+		}
+
+		return false;
+	}
+
+	/** Two convex polygons overlap unless one of their face normals is a separating axis */
+	private static boolean polygonsOverlap(PolyBody a, PolyBody b, ContactBuffer contacts)
+	{
+		int nA = a.numVertices();
+		int nB = b.numVertices();
+		float[] verticesAX = contacts.scratch(0, nA);
+		float[] verticesAY = contacts.scratch(1, nA);
+		float[] normalsAX = contacts.scratch(2, nA);
+		float[] normalsAY = contacts.scratch(3, nA);
+		float[] verticesBX = contacts.scratch(4, nB);
+		float[] verticesBY = contacts.scratch(5, nB);
+		float[] normalsBX = contacts.scratch(6, nB);
+		float[] normalsBY = contacts.scratch(7, nB);
+		a.verticesWorld(verticesAX, verticesAY);
+		a.normalsWorld(normalsAX, normalsAY);
+		b.verticesWorld(verticesBX, verticesBY);
+		b.normalsWorld(normalsBX, normalsBY);
+
+		return !hasSeparatingAxis(normalsAX, normalsAY, nA, verticesAX, verticesAY, nA, verticesBX, verticesBY, nB)
+				&& !hasSeparatingAxis(normalsBX, normalsBY, nB, verticesAX, verticesAY, nA, verticesBX, verticesBY, nB);
+	}
 
-		if (contactPoint != null && contactNormal != null)
+	/** Check if the projections of the two vertex sets onto any of the axes do not overlap */
+	private static boolean hasSeparatingAxis(float[] axisX, float[] axisY, int axes, float[] aX, float[] aY, int nA,
+			float[] bX, float[] bY, int nB)
+	{
+		for (int i = 0; i < axes; i++)
 		{
-			contact = new Contact(circle, polygon, Globals.DEFAULT_RESTITUTION, penetration);
-			contact.setNormal(contactNormal);
-			contact.setContactPoint(contactPoint);
+			float minA = Float.MAX_VALUE;
+			float maxA = -Float.MAX_VALUE;
+			for (int k = 0; k < nA; k++)
+			{
+				float d = Vector2.dot(aX[k], aY[k], axisX[i], axisY[i]);
+				minA = Math.min(minA, d);
+				maxA = Math.max(maxA, d);
+			}
+
+			float minB = Float.MAX_VALUE;
+			float maxB = -Float.MAX_VALUE;
+			for (int k = 0; k < nB; k++)
+			{
+				float d = Vector2.dot(bX[k], bY[k], axisX[i], axisY[i]);
+				minB = Math.min(minB, d);
+				maxB = Math.max(maxB, d);
+			}
+
+			if (maxA <= minB || maxB <= minA)
+				return true;
 		}
 
-		return contact;
+		return false;
 	}
 
 	/** Returns the contact point using the Minkowski Difference for polygon v polygon */
-	private static Contact polygonPolygon(PolyBody a, PolyBody b)
+	private static void polygonPolygon(PolyBody a, PolyBody b, ContactBuffer contacts, float margin)
 	{
-		Contact contact = null;
 		float leastPenetratingDist = -Globals.INFINITY;
-		float dist;
-		Vector2 contactPoint = null;
-		Vector2 contactNormal = null;
+
+		// world vertices and normals of both bodies, every vertex is rotated exactly once
+		int nA = a.numVertices();
+		int nB = b.numVertices();
+		float[] verticesAX = contacts.scratch(0, nA);
+		float[] verticesAY = contacts.scratch(1, nA);
+		float[] normalsAX = contacts.scratch(2, nA);
+		float[] normalsAY = contacts.scratch(3, nA);
+		float[] verticesBX = contacts.scratch(4, nB);
+		float[] verticesBY = contacts.scratch(5, nB);
+		float[] normalsBX = contacts.scratch(6, nB);
+		float[] normalsBY = contacts.scratch(7, nB);
+		a.verticesWorld(verticesAX, verticesAY);
+		a.normalsWorld(normalsAX, normalsAY);
+		b.verticesWorld(verticesBX, verticesBY);
+		b.normalsWorld(normalsBX, normalsBY);
+
+		// fill a pooled contact in place, we give it back if the polygons are separated
+		Contact contact = contacts.obtain(a, b, contacts.restitution(), 0);
+		Vector2 contactPoint = contact.contactPoint();
+		Vector2 contactNormal = contact.normal();
 
 		// For face a, check all supporting vertices of B
-		ArrayList<Vector2> vertices = a.verticesWorld();
-		for (int i = 0; i < a.numVertices(); i++)
+		float dist = faceSeparation(a, b, verticesAX, verticesAY, normalsAX, normalsAY, verticesBX, verticesBY,
+				false, leastPenetratingDist, contactPoint, contactNormal);
+		if (dist > 0)
 		{
-			Vector2 normal = a.normalWorld(i);
-			Vector2 v0 = vertices.get(i);
-			Vector2 v1 = vertices.get(((i + 1) % a.numVertices()));
+			polygonGap(contact, contacts, verticesAX, verticesAY, nA, verticesBX, verticesBY, nB, margin);
+			return;
+		}
+		leastPenetratingDist = dist;
 
-			// Gather support vertices of B, most opposite of face normal
-			ArrayList<SupportVertex> supportVertices = getSupportVertices(b, normal.invert());
+		// repeat for face of B, vertices of A
+		dist = faceSeparation(b, a, verticesBX, verticesBY, normalsBX, normalsBY, verticesAX, verticesAY,
+				true, leastPenetratingDist, contactPoint, contactNormal);
+		leastPenetratingDist = dist;
 
-			for (int j = 0; j < supportVertices.size(); j++)
-			{
-				// form point on plane on minkowski face
-				Vector2 mfp0 = supportVertices.get(j).vector.subtractBy(v0);
-				Vector2 mfp1 = supportVertices.get(j).vector.subtractBy(v1);
+		if (leastPenetratingDist < 0 && leastPenetratingDist > -Globals.INFINITY)
+		{
+			contactNormal.normalizeLocal();
+			contact.setPenetration(-leastPenetratingDist);
+		}
+		else
+			polygonGap(contact, contacts, verticesAX, verticesAY, nA, verticesBX, verticesBY, nB, margin);
+	}
 
-				float faceDist = mfp0.dot(normal);
+	/**
+	 * Two polygons found apart. Their gap is the closest any vertex of one comes to an edge of
+	 * the other, if it is within the margin the contact becomes a speculative one along the gap,
+	 * otherwise it is given back
+	 */
+	private static void polygonGap(Contact contact, ContactBuffer contacts, float[] aX, float[] aY, int nA,
+			float[] bX, float[] bY, int nB, float margin)
+	{
+		if (margin <= 0)
+		{
+			contacts.discardLast();
+			return;
+		}
 
-				Vector2 projection = Globals.ZERO_VECTOR.projectPointOntoEdge(mfp0, mfp1);
-				dist = projection.magnitude() * Math.signum(faceDist);
+		// closest point pair so far, on A and on B
+		Vector2 closest = contact.contactPoint();
+		float bestSquared = margin * margin;
+		float fromX = 0;
+		float fromY = 0;
+		float toX = 0;
+		float toY = 0;
 
-				// collision found
-				if (dist > leastPenetratingDist)
+		for (int i = 0; i < nA; i++)
+		{
+			int next = (i + 1) % nA;
+			for (int k = 0; k < nB; k++)
+			{
+				Vector2.projectPointOntoEdgeToOut(bX[k], bY[k], aX[i], aY[i], aX[next], aY[next], closest);
+				float d = Vector2.distanceSquared(closest.x, closest.y, bX[k], bY[k]);
+				if (d < bestSquared)
 				{
-					leastPenetratingDist = dist;
-					contactNormal = normal;
-
-					// if there are two support vertices we take the midpoint
-					if (supportVertices.size() > 1)
-					{
-						int index0 = supportVertices.get(0).index;
-						int index1 = supportVertices.get(1).index;
-						contactPoint = b.verticesWorld().get(index0).midPoint(b.verticesWorld().get(index1));
-					}
-					else
-					{
-						int index = supportVertices.get(j).index;
-						contactPoint = b.verticesWorld().get(index);
-					}
-
-					// clamp point to edge
-					contactPoint = contactPoint.projectPointOntoEdge(v0, v1);
+					bestSquared = d;
+					fromX = closest.x;
+					fromY = closest.y;
+					toX = bX[k];
+					toY = bY[k];
 				}
+			}
+		}
 
-				// no collision, return early
-				else if (dist > 0)
-					return null;
+		for (int i = 0; i < nB; i++)
+		{
+			int next = (i + 1) % nB;
+			for (int k = 0; k < nA; k++)
+			{
+				Vector2.projectPointOntoEdgeToOut(aX[k], aY[k], bX[i], bY[i], bX[next], bY[next], closest);
+				float d = Vector2.distanceSquared(closest.x, closest.y, aX[k], aY[k]);
+				if (d < bestSquared)
+				{
+					bestSquared = d;
+					fromX = aX[k];
+					fromY = aY[k];
+					toX = closest.x;
+					toY = closest.y;
+				}
 			}
 		}
 
-		// repeat for face of B, vertices of A
-		vertices = b.verticesWorld();
-		for (int i = 0; i < b.numVertices(); i++)
+		// too far apart, or touching too closely to tell which way the gap faces
+		if (bestSquared >= margin * margin || bestSquared < Globals.EPSILON)
 		{
-			Vector2 normal = b.normalWorld(i);
-			Vector2 v0 = vertices.get(i);
-			Vector2 v1 = vertices.get(((i + 1) % b.numVertices()));		//modulo incase we go over it'll loop around
+			contacts.discardLast();
+			return;
+		}
 
-			// Gather support vertices of A, most opposite of face normal
-			ArrayList<SupportVertex> supportVertices = getSupportVertices(a, normal.invert());
+		// normal points from A to B like the face normals above
+		float gap = (float) Math.sqrt(bestSquared);
+		contact.setNormal((toX - fromX) / gap, (toY - fromY) / gap);
+		contact.setContactPoint((fromX + toX) / 2, (fromY + toY) / 2);
+		contact.setPenetration(0);
+		contact.setSeparation(gap);
+	}
 
-			for (int j = 0; j < supportVertices.size(); j++)
+	/**
+	 * Check every face of polygon 'face' against the support vertices of polygon 'other'.
+	 * Updates contactPoint / contactNormal whenever a face with less penetration than
+	 * leastPenetratingDist is found, and returns the new least penetrating distance.
+	 * Returns a positive distance as soon as a separating axis is found.
+	 * 
+	 * If flipped is true the face belongs to body B of the contact, so the minkowski
+	 * difference and contact normal are reversed.
+	 */
+	private static float faceSeparation(PolyBody face, PolyBody other, float[] faceX, float[] faceY,
+			float[] normalX, float[] normalY, float[] otherX, float[] otherY, boolean flipped,
+			float leastPenetratingDist, Vector2 contactPoint, Vector2 contactNormal)
+	{
+		int n = face.numVertices();
+		for (int i = 0; i < n; i++)
+		{
+			int next = (i + 1) % n;		//modulo incase we go over it'll loop around
+			float nX = normalX[i];
+			float nY = normalY[i];
+			float v0X = faceX[i];
+			float v0Y = faceY[i];
+			float v1X = faceX[next];
+			float v1Y = faceY[next];
+
+			// Gather support vertices of the other body, most opposite of face normal
+			int support0 = supportIndex(other, -nX, -nY);
+			int support1 = secondSupportIndex(other, -nX, -nY, support0);
+			int supportCount = (support1 == -1) ? 1 : 2;
+
+			for (int j = 0; j < supportCount; j++)
 			{
+				int s = (j == 0) ? support0 : support1;
+
 				// form point on plane on minkowski face
-				Vector2 mfp0 = v0.subtractBy(supportVertices.get(j).vector);
-				Vector2 mfp1 = v1.subtractBy(supportVertices.get(j).vector);
+				float mfp0X = otherX[s] - v0X;
+				float mfp0Y = otherY[s] - v0Y;
+				float mfp1X = otherX[s] - v1X;
+				float mfp1Y = otherY[s] - v1Y;
+				if (flipped)
+				{
+					mfp0X = -mfp0X;
+					mfp0Y = -mfp0Y;
+					mfp1X = -mfp1X;
+					mfp1Y = -mfp1Y;
+				}
 
-				float faceDist = -mfp0.dot(normal);
-				Vector2 projection = Globals.ZERO_VECTOR.projectPointOntoEdge(mfp0, mfp1);
-				dist = projection.magnitude() * Math.signum(faceDist);
+				float faceDist = Vector2.dot(mfp0X, mfp0Y, nX, nY);
+				if (flipped)
+					faceDist = -faceDist;
 
-				// if collision
+				float projection = Vector2.distanceToEdgeSquared(0, 0, mfp0X, mfp0Y, mfp1X, mfp1Y);
+				float dist = (float) Math.sqrt(projection) * Math.signum(faceDist);
+
+				// collision found
 				if (dist > leastPenetratingDist)
 				{
 					leastPenetratingDist = dist;
-					contactNormal = normal.invert();
+					if (flipped)
+						contactNormal.set(-nX, -nY);
+					else
+						contactNormal.set(nX, nY);
 
 					// if there are two support vertices we take the midpoint
-					if (supportVertices.size() > 1)
-					{
-						int index0 = supportVertices.get(0).index;
-						int index1 = supportVertices.get(1).index;
-						contactPoint = a.verticesWorld().get(index0)
-								.midPoint(a.verticesWorld().get(index1));
-					} else
-					{
-						int index = supportVertices.get(j).index;
-						contactPoint = a.verticesWorld().get(index);
-					}
-
-					// clamp contact point to the edge
-					contactPoint = contactPoint.projectPointOntoEdge(v0, v1);
+					if (supportCount > 1)
+						contactPoint.set((otherX[support0] + otherX[support1]) / 2,
+								(otherY[support0] + otherY[support1]) / 2);
+					else
+						contactPoint.set(otherX[support0], otherY[support0]);
+
+					// clamp point to edge
+					Vector2.projectPointOntoEdgeToOut(contactPoint.x, contactPoint.y, v0X, v0Y, v1X, v1Y,
+							contactPoint);
 				}
 
 				// separating axis, bail early
 				else if (dist > 0)
-					return null;
+					return dist;
 			}
 		}
 
-		if (leastPenetratingDist < 0 && contactPoint != null && contactNormal != null)
-		{
-			contact = new Contact(a, b, Globals.DEFAULT_RESTITUTION, -leastPenetratingDist);
-			contact.setContactPoint(contactPoint);
-			contact.setNormal(contactNormal.normalize());
-
-			// System.out.println("ContactNormal: " + contactNormal +
-			// "   contactPoint: " + contactPoint + "   Penetration: " +
-			// leastPenetratingDist + "  a: " + a + "   b: " + b);
-			// System.out.println("------------");
-		}
-
-		return contact;
+		return leastPenetratingDist;
 	}
 
-	/** For minkowski difference, get the supporting vertices given a normal. */
-	private static ArrayList<SupportVertex> getSupportVertices(PolyBody body, Vector2 n)
+	/**
+	 * For minkowski difference, get the index of the supporting vertex given a
+	 * normal (nX, nY) in world coords. The first vertex furthest along the normal wins.
+	 */
+	private static int supportIndex(PolyBody body, float nX, float nY)
 	{
-		ArrayList<SupportVertex> supportVertices = new ArrayList<SupportVertex>(body.polygon().npoints + 1);
-		Vector2 normal = body.state().rotateIntoSpaceOf(n);
+		Polygon polygon = body.polygon();
+		StateMatrix state = body.state();
+
+		// rotate the normal into body space so we can use the local vertices directly
+		float localX = nX * state.xRow().x + nY * state.xRow().y;
+		float localY = nX * state.yRow().x + nY * state.yRow().y;
 
 		int closestI = -1;
-		int secondClosestI = -1;
 		float closestD = -Globals.INFINITY;
 
-		// first support
-		for (int i = 0; i < body.numVertices(); i++)
+		for (int i = 0; i < polygon.npoints; i++)
 		{
-			float dist = normal.dot(body.vertices().get(i));
-
+			float dist = localX * polygon.xpoints[i] + localY * polygon.ypoints[i];
 			if (dist > closestD)
 			{
 				closestD = dist;
 				closestI = i;
-
-				// clear second support
-				secondClosestI = -1;
-			} else if (dist == closestD)
-			{
-				// second support
-				secondClosestI = i;
 			}
 		}
 
-		supportVertices.add(new SupportVertex(body.state().TransformBy(body.vertices().get(closestI)), closestI));
+		return closestI;
+	}
+
+	/**
+	 * Returns the index of a second supporting vertex that is exactly as far along the
+	 * normal as the first support (ie the support is an edge), or -1 if there is none
+	 */
+	private static int secondSupportIndex(PolyBody body, float nX, float nY, int first)
+	{
+		Polygon polygon = body.polygon();
+		StateMatrix state = body.state();
+
+		float localX = nX * state.xRow().x + nY * state.xRow().y;
+		float localY = nX * state.yRow().x + nY * state.yRow().y;
+
+		float closestD = localX * polygon.xpoints[first] + localY * polygon.ypoints[first];
+		int secondClosestI = -1;
 
-		// if we have a second support only
-		if (secondClosestI != -1)
-			supportVertices.add(new SupportVertex(body.state().TransformBy(
-					body.vertices().get(secondClosestI)), secondClosestI));
+		for (int i = first + 1; i < polygon.npoints; i++)
+		{
+			float dist = localX * polygon.xpoints[i] + localY * polygon.ypoints[i];
+			if (dist == closestD)
+				secondClosestI = i;
+		}
 
-		return supportVertices;
+		return secondClosestI;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package com.sjsu.physics.collisiondetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.sjsu.physics.shapes.PolyBody;
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+import com.sjsu.physics.utils.Vector2;
+
+/**
+ * Nearest neighbor and radius queries over the broadphase, results are body handles.
+ *
+ * Best-first search: nodes go on a primitive min-heap keyed by the distance to their loose bounds,
+ * bodies by their exact distance, so bodies come off the heap nearest first and the search stops
+ * once it has enough. The distance to a body is the distance to its shape, 0 if the point is inside.
+ *
+ * The tree structure never changes after init, so nodes are numbered once up front. Nothing is
+ * allocated per query once the heap has grown to fit. Not thread safe, give each querying thread its own.
+ */
+public class NeighborQuery
+{
+	// Every node of every tree, the numbers of the roots and of each node's children (-1 for none)
+	private QuadTreeNode[] nodes;
+	private int[] roots;
+	private int[] children;
+
+	// Min-heap of distances. An item >= 0 is a body handle, node n is stored as -(n + 1)
+	private float[] keys;
+	private int[] items;
+	private int size;
+
+	// Polygon vertices in world coords
+	private float[] vx;
+	private float[] vy;
+
+	/** A query over the trees of the given roots, normally the roots of every physics thread */
+	public NeighborQuery(QuadTreeNode[] treeRoots)
+	{
+		ArrayList<QuadTreeNode> all = new ArrayList<QuadTreeNode>();
+		roots = new int[treeRoots.length];
+		children = new int[64];
+		for (int i = 0; i < treeRoots.length; i++)
+			roots[i] = number(treeRoots[i], all);
+
+		nodes = all.toArray(new QuadTreeNode[all.size()]);
+		children = Arrays.copyOf(children, nodes.length * 4);
+
+		keys = new float[64];
+		items = new int[64];
+		vx = new float[8];
+		vy = new float[8];
+	}
+
+	/** Number node and the nodes below it in the order they are added to all, recording the numbers
+	 * of each one's children as they are handed out. Returns node's number */
+	private int number(QuadTreeNode node, ArrayList<QuadTreeNode> all)
+	{
+		int n = all.size();
+		all.add(node);
+		if (children.length < (n + 1) * 4)
+			children = Arrays.copyOf(children, Math.max(children.length * 2, (n + 1) * 4));
+		Arrays.fill(children, n * 4, n * 4 + 4, -1);
+
+		if (node.isLeaf())
+			return n;
+
+		for (int c = 0; c < 4; c++)
+		{
+			if (node.children()[c] != null)
+			{
+				int child = number(node.children()[c], all);
+				children[n * 4 + c] = child;
+			}
+		}
+		return n;
+	}
+
+	/** Write the handles of the (at most) k bodies nearest to (x, y) into handles, nearest first,
+	 * and their distances into distances unless it is null. Returns the number written */
+	public int nearest(float x, float y, int k, int[] handles, float[] distances)
+	{
+		if (k > handles.length || (distances != null && k > distances.length))
+			throw new IllegalArgumentException("Result arrays are shorter than k = " + k);
+
+		return search(x, y, Float.MAX_VALUE, k, handles, distances);
+	}
+
+	/** Write the handles of the bodies within r of (x, y) into handles, nearest first, and their distances
+	 * into distances unless it is null. Returns the number written, if the arrays filled up
+	 * there may be more bodies in range (further than those written) */
+	public int withinRadius(float x, float y, float r, int[] handles, float[] distances)
+	{
+		int max = handles.length;
+		if (distances != null)
+			max = Math.min(max, distances.length);
+
+		return search(x, y, r, max, handles, distances);
+	}
+
+	private int search(float x, float y, float maxDistance, int k, int[] handles, float[] distances)
+	{
+		size = 0;
+		int found = 0;
+		if (k <= 0)
+			return 0;
+
+		// only the roots to start with, their subtrees are pushed as we go
+		for (int i = 0; i < roots.length; i++)
+			pushNode(roots[i], x, y, maxDistance);
+
+		while (size > 0 && found < k)
+		{
+			float key = keys[0];
+			int item = items[0];
+			pop();
+
+			if (item >= 0)
+			{
+				// bodies are keyed by their exact distance, nothing left on the heap is nearer
+				handles[found] = item;
+				if (distances != null)
+					distances[found] = key;
+				found++;
+				continue;
+			}
+
+			int n = -item - 1;
+			ArrayList<RigidBody> bodies = nodes[n].bodies();
+			for (int i = 0; i < bodies.size(); i++)
+			{
+				RigidBody b = bodies.get(i);
+				float d = distanceTo(b, x, y);
+				if (d <= maxDistance)
+					push(d, b.id());
+			}
+
+			for (int c = 0; c < 4; c++)
+			{
+				if (children[n * 4 + c] >= 0)
+					pushNode(children[n * 4 + c], x, y, maxDistance);
+			}
+		}
+
+		return found;
+	}
+
+	/** Push a node keyed by the distance from (x, y) to its loose bounds, unless it is empty or too far */
+	private void pushNode(int n, float x, float y, float maxDistance)
+	{
+		QuadTreeNode node = nodes[n];
+		if (node.looseMinX() > node.looseMaxX())
+			return;
+
+		float ex = Math.max(0, Math.max(node.looseMinX() - x, x - node.looseMaxX()));
+		float ey = Math.max(0, Math.max(node.looseMinY() - y, y - node.looseMaxY()));
+		float d = (float) Math.sqrt(ex * ex + ey * ey);
+		if (d <= maxDistance)
+			push(d, -(n + 1));
+	}
+
+	/** Distance from (x, y) to the shape of b, 0 if the point is inside it */
+	private float distanceTo(RigidBody b, float x, float y)
+	{
+		if (b.type() == BodyType.CIRCLE)
+		{
+			float d = (float) Math.sqrt(Vector2.distanceSquared(x, y, b.center().x, b.center().y));
+			return Math.max(0, d - b.bounds().radius());
+		}
+
+		PolyBody p = (PolyBody) b;
+		if (p.containsPoint(x, y))
+			return 0;
+
+		int n = p.numVertices();
+		if (vx.length < n)
+		{
+			vx = new float[n];
+			vy = new float[n];
+		}
+		p.verticesWorld(vx, vy);
+
+		float best = Float.MAX_VALUE;
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			best = Math.min(best, Vector2.distanceToEdgeSquared(x, y, vx[i], vy[i], vx[j], vy[j]));
+		}
+		return (float) Math.sqrt(best);
+	}
+
+	private void push(float key, int item)
+	{
+		if (size == keys.length)
+		{
+			float[] k = new float[size * 2];
+			int[] it = new int[size * 2];
+			System.arraycopy(keys, 0, k, 0, size);
+			System.arraycopy(items, 0, it, 0, size);
+			keys = k;
+			items = it;
+		}
+
+		// sift up
+		int i = size++;
+		while (i > 0)
+		{
+			int parent = (i - 1) >> 1;
+			if (keys[parent] <= key)
+				break;
+			keys[i] = keys[parent];
+			items[i] = items[parent];
+			i = parent;
+		}
+		keys[i] = key;
+		items[i] = item;
+	}
+
+	/** Remove the top of the heap */
+	private void pop()
+	{
+		size--;
+		if (size == 0)
+			return;
+
+		// sift the last entry down from the top
+		float key = keys[size];
+		int item = items[size];
+		int i = 0;
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && keys[child + 1] < keys[child])
+				child++;
+			if (keys[child] >= key)
+				break;
+			keys[i] = keys[child];
+			items[i] = items[child];
+			i = child;
+		}
+		keys[i] = key;
+		items[i] = item;
+	}
+}
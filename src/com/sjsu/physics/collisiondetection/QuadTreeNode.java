@@ -3,6 +3,7 @@ package com.sjsu.physics.collisiondetection;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 
+import com.sjsu.physics.shapes.BoundingBox;
 import com.sjsu.physics.shapes.PolyBody;
 import com.sjsu.physics.shapes.RigidBody;
 import com.sjsu.physics.shapes.RigidBody.BodyType;
@@ -39,6 +40,13 @@ public class QuadTreeNode
         private QuadTreeNode parent;
         private QuadTreeNode[] children;
         
+        // Loose bounds of every body inserted into this node or below it since the last clear,
+        // as they were on insert. Empty (min > max) when nothing was inserted
+        private float minX;
+        private float minY;
+        private float maxX;
+        private float maxY;
+        
         public QuadTreeNode()
         {
                 // Use init method for recursive initiation
@@ -53,6 +61,7 @@ public class QuadTreeNode
                 myBodies = new ArrayList<RigidBody>(Globals.MAX_QUADTREE_CHILDREN);
                 children = new QuadTreeNode[4];
                 parent = par;
+                resetLooseBounds();
                 
                 if (Globals.MAX_QUADTREE_DEPTH > depth)
                         this.subDivide();
@@ -139,6 +148,15 @@ public class QuadTreeNode
                 return myBodies;
         }
         
+        /** Retrieve the leaf whose area holds the body's center. The body itself may be stored above it */
+        public QuadTreeNode retrieveLeaf(RigidBody body)
+        {
+                if (!isLeaf())
+                        return children[findIndex(body)].retrieveLeaf(body);
+                
+                return this;
+        }
+        
         /** Retrieve all potential contacts (the node the body is in and all parents */
         public void retrieveContacts(ArrayList<RigidBody> potentialContacts, RigidBody body)
         {
@@ -149,6 +167,7 @@ public class QuadTreeNode
         public void insert(RigidBody body)
         {
                 boolean added = true;
+                growLooseBounds(body);
                 
                 // If we have subnodes, find the index our body belongs to and insert it there
                 if (!isLeaf())
@@ -217,6 +236,7 @@ public class QuadTreeNode
         public void clearObjects()
         {
                 myBodies.clear();
+                resetLooseBounds();
                 
                 for (int i = 0; i < 4; i++)
                 {
@@ -229,6 +249,104 @@ public class QuadTreeNode
         
         
         
+        /** Visit every body whose bounding box overlaps the box (minX, minY) - (maxX, maxY).
+         * Subtrees whose loose bounds miss the box are skipped. Returns false if the visitor ended the query */
+        public boolean queryAABB(float qMinX, float qMinY, float qMaxX, float qMaxY, BodyVisitor visitor)
+        {
+                if (qMaxX < minX || qMinX > maxX || qMaxY < minY || qMinY > maxY)
+                        return true;
+                
+                for (int i = 0; i < myBodies.size(); i++)
+                {
+                        RigidBody b = myBodies.get(i);
+                        Vector2 center = b.center();
+                        BoundingBox box = b.bounds();
+                        
+                        if (box.rightX(center) < qMinX || box.leftX(center) > qMaxX
+                                        || box.bottomY(center) < qMinY || box.topY(center) > qMaxY)
+                                continue;
+                        
+                        if (!visitor.visit(b))
+                                return false;
+                }
+                
+                for (int i = 0; i < 4; i++)
+                {
+                        if (children[i] != null && !children[i].queryAABB(qMinX, qMinY, qMaxX, qMaxY, visitor))
+                                return false;
+                }
+                
+                return true;
+        }
+        
+        /** Visit every body whose shape contains the point (x, y). Returns false if the visitor ended the query */
+        public boolean queryPoint(float x, float y, BodyVisitor visitor)
+        {
+                if (x < minX || x > maxX || y < minY || y > maxY)
+                        return true;
+                
+                for (int i = 0; i < myBodies.size(); i++)
+                {
+                        RigidBody b = myBodies.get(i);
+                        if (b.containsPoint(x, y) && !visitor.visit(b))
+                                return false;
+                }
+                
+                for (int i = 0; i < 4; i++)
+                {
+                        if (children[i] != null && !children[i].queryPoint(x, y, visitor))
+                                return false;
+                }
+                
+                return true;
+        }
+        
+        /** Grow our loose bounds to take in a body's bounding box */
+        private void growLooseBounds(RigidBody body)
+        {
+                Vector2 center = body.center();
+                BoundingBox box = body.bounds();
+                minX = Math.min(minX, box.leftX(center));
+                minY = Math.min(minY, box.topY(center));
+                maxX = Math.max(maxX, box.rightX(center));
+                maxY = Math.max(maxY, box.bottomY(center));
+        }
+        
+        private void resetLooseBounds()
+        {
+                minX = Float.MAX_VALUE;
+                minY = Float.MAX_VALUE;
+                maxX = -Float.MAX_VALUE;
+                maxY = -Float.MAX_VALUE;
+        }
+        
+        /* Loose bounds for casts, empty (min > max) when nothing was inserted */
+        float looseMinX()
+        {
+                return minX;
+        }
+        
+        float looseMinY()
+        {
+                return minY;
+        }
+        
+        float looseMaxX()
+        {
+                return maxX;
+        }
+        
+        float looseMaxY()
+        {
+                return maxY;
+        }
+        
+        /** Return the node above us, null for the root */
+        public QuadTreeNode parent()
+        {
+                return parent;
+        }
+        
         /** Return our children / subnodes */
         public QuadTreeNode[] children()
         {
@@ -0,0 +1,373 @@
+package com.sjsu.physics.collisiondetection;
+
+import java.util.ArrayList;
+
+import com.sjsu.physics.shapes.BoundingBox;
+import com.sjsu.physics.shapes.PolyBody;
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+import com.sjsu.physics.utils.Globals;
+import com.sjsu.physics.utils.Vector2;
+
+/**
+ * Casts rays and circles through the broadphase and finds the closest body they hit.
+ *
+ * Nodes are visited front to back using their loose bounds, so once a hit is found every node
+ * and body further away than it is skipped. Hits are exact, rays against circles and against
+ * the edges of convex polygons, circles against circles and against polygons grown by the radius.
+ * Bodies the cast starts inside of are ignored, so a body can cast from its own center.
+ *
+ * Nothing is allocated per cast. A caster is not thread safe, give each querying thread its own.
+ */
+public class RayCaster
+{
+	private static final float MISS = Float.MAX_VALUE;
+
+	private QuadTreeNode[] roots;
+
+	// The current cast, direction is unit length
+	private float ox;
+	private float oy;
+	private float dx;
+	private float dy;
+	private float radius;
+
+	// Closest hit so far
+	private float best;
+	private RigidBody bestBody;
+	private float bestNx;
+	private float bestNy;
+
+	// Entry distances of the nodes at each level, for ordering them front to back
+	private float[][] entries;
+
+	// Polygon vertices and normals in world coords
+	private float[] vx;
+	private float[] vy;
+	private float[] nx;
+	private float[] ny;
+
+	private RayHit scratchHit;
+
+	/** A caster over the trees of the given roots, normally the roots of every physics thread */
+	public RayCaster(QuadTreeNode[] treeRoots)
+	{
+		roots = treeRoots;
+		entries = new float[Globals.MAX_QUADTREE_DEPTH + 2][Math.max(4, roots.length)];
+		vx = new float[8];
+		vy = new float[8];
+		nx = new float[8];
+		ny = new float[8];
+		scratchHit = new RayHit();
+	}
+
+	/** Find the closest body the ray from (originX, originY) along (dirX, dirY) hits within maxDistance.
+	 * Returns whether anything was hit, the hit is written to hit */
+	public boolean rayCast(float originX, float originY, float dirX, float dirY, float maxDistance, RayHit hit)
+	{
+		return cast(originX, originY, 0, dirX, dirY, maxDistance, hit);
+	}
+
+	/** Find the first body a circle of the given radius hits when swept from (originX, originY)
+	 * along (dirX, dirY) for at most maxDistance. Returns whether anything was hit */
+	public boolean circleCast(float originX, float originY, float r, float dirX, float dirY, float maxDistance, RayHit hit)
+	{
+		if (r < 0)
+			throw new IllegalArgumentException("Radius must not be negative, got " + r);
+
+		return cast(originX, originY, r, dirX, dirY, maxDistance, hit);
+	}
+
+	/** Cast count rays, ray i from (originX[i], originY[i]) along (dirX[i], dirY[i]).
+	 * The body ray i hit and its distance go in hitBodies[i] and hitDistances[i],
+	 * a ray that hit nothing gets null and maxDistance. Returns the number of rays that hit */
+	public int rayCast(float[] originX, float[] originY, float[] dirX, float[] dirY, int count, float maxDistance,
+			RigidBody[] hitBodies, float[] hitDistances)
+	{
+		int hits = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (cast(originX[i], originY[i], 0, dirX[i], dirY[i], maxDistance, scratchHit))
+			{
+				hitBodies[i] = scratchHit.body();
+				hitDistances[i] = scratchHit.distance();
+				hits++;
+			}
+			else
+			{
+				hitBodies[i] = null;
+				hitDistances[i] = maxDistance;
+			}
+		}
+		return hits;
+	}
+
+	private boolean cast(float originX, float originY, float r, float dirX, float dirY, float maxDistance, RayHit hit)
+	{
+		float length = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+		if (length < Globals.EPSILON)
+			throw new IllegalArgumentException("Cast direction must not be zero");
+
+		ox = originX;
+		oy = originY;
+		dx = dirX / length;
+		dy = dirY / length;
+		radius = r;
+		best = maxDistance;
+		bestBody = null;
+
+		castNodes(roots, 0);
+
+		if (bestBody == null)
+		{
+			hit.clear();
+			return false;
+		}
+
+		// the point is on the body, a circle's center is radius further back along the normal
+		float px = ox + dx * best - bestNx * radius;
+		float py = oy + dy * best - bestNy * radius;
+		hit.set(bestBody, best, px, py, bestNx, bestNy);
+		return true;
+	}
+
+	/** Visit nodes closest first, skipping any that start further away than our best hit */
+	private void castNodes(QuadTreeNode[] nodes, int level)
+	{
+		float[] entry = entries[level];
+		for (int i = 0; i < nodes.length; i++)
+		{
+			QuadTreeNode n = nodes[i];
+			entry[i] = n == null ? MISS : boxEntry(n.looseMinX(), n.looseMinY(), n.looseMaxX(), n.looseMaxY());
+		}
+
+		while (true)
+		{
+			int next = -1;
+			for (int i = 0; i < nodes.length; i++)
+			{
+				if (entry[i] < best && (next < 0 || entry[i] < entry[next]))
+					next = i;
+			}
+			if (next < 0)
+				return;
+
+			entry[next] = MISS;
+			castNode(nodes[next], level);
+		}
+	}
+
+	private void castNode(QuadTreeNode node, int level)
+	{
+		ArrayList<RigidBody> bodies = node.bodies();
+		for (int i = 0; i < bodies.size(); i++)
+		{
+			RigidBody b = bodies.get(i);
+			Vector2 center = b.center();
+			BoundingBox box = b.bounds();
+
+			if (boxEntry(box.leftX(center), box.topY(center), box.rightX(center), box.bottomY(center)) < best)
+				castBody(b);
+		}
+
+		if (!node.isLeaf())
+			castNodes(node.children(), level + 1);
+	}
+
+	private void castBody(RigidBody b)
+	{
+		if (b.type() == BodyType.CIRCLE)
+		{
+			Vector2 c = b.center();
+			float t = circleEntry(c.x, c.y, b.bounds().radius() + radius);
+			if (t < best)
+			{
+				float invR = 1 / (b.bounds().radius() + radius);
+				found(b, t, (ox + dx * t - c.x) * invR, (oy + dy * t - c.y) * invR);
+			}
+		}
+		else if (b.type() == BodyType.POLYGON)
+		{
+			PolyBody p = (PolyBody) b;
+			int n = p.numVertices();
+			if (n < 3)
+				return;
+
+			if (vx.length < n)
+			{
+				vx = new float[n];
+				vy = new float[n];
+				nx = new float[n];
+				ny = new float[n];
+			}
+			p.verticesWorld(vx, vy);
+			p.normalsWorld(nx, ny);
+
+			if (radius == 0)
+				rayPolygon(b, n);
+			else
+				circlePolygon(b, n);
+		}
+	}
+
+	/** Clip the ray against every edge (Cyrus-Beck), the last edge it enters through is the one it hits */
+	private void rayPolygon(RigidBody b, int n)
+	{
+		float tEnter = 0;
+		float tExit = best;
+		int face = -1;
+
+		for (int i = 0; i < n; i++)
+		{
+			// normals are outward and unnormalized, num > 0 means the origin is inside this edge
+			float num = Vector2.dot(nx[i], ny[i], vx[i] - ox, vy[i] - oy);
+			float den = Vector2.dot(nx[i], ny[i], dx, dy);
+
+			if (den == 0)
+			{
+				// parallel to and outside this edge
+				if (num < 0)
+					return;
+			}
+			else if (den < 0)
+			{
+				float t = num / den;
+				if (t > tEnter)
+				{
+					tEnter = t;
+					face = i;
+				}
+			}
+			else
+				tExit = Math.min(tExit, num / den);
+
+			if (tEnter > tExit)
+				return;
+		}
+
+		// never entered, we started inside
+		if (face < 0 || tEnter >= best)
+			return;
+
+		float invN = 1 / (float) Math.sqrt(nx[face] * nx[face] + ny[face] * ny[face]);
+		found(b, tEnter, nx[face] * invN, ny[face] * invN);
+	}
+
+	/** Cast against the polygon grown by our radius: its edges pushed out along their normals
+	 * joined by circles around its vertices */
+	private void circlePolygon(RigidBody b, int n)
+	{
+		// already touching
+		if (b.containsPoint(ox, oy))
+			return;
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			if (Vector2.distanceToEdgeSquared(ox, oy, vx[i], vy[i], vx[j], vy[j]) < radius * radius)
+				return;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			float invN = 1 / (float) Math.sqrt(nx[i] * nx[i] + ny[i] * ny[i]);
+			float ux = nx[i] * invN;
+			float uy = ny[i] * invN;
+
+			// the pushed out edge, only when moving towards it
+			float den = Vector2.dot(ux, uy, dx, dy);
+			if (den < 0)
+			{
+				float ax = vx[i] + ux * radius;
+				float ay = vy[i] + uy * radius;
+				float t = Vector2.dot(ux, uy, ax - ox, ay - oy) / den;
+				if (t >= 0 && t < best)
+				{
+					// only counts between the edge's two vertices
+					float ex = vx[j] - vx[i];
+					float ey = vy[j] - vy[i];
+					float s = Vector2.dot(ox + dx * t - ax, oy + dy * t - ay, ex, ey);
+					if (s >= 0 && s <= ex * ex + ey * ey)
+						found(b, t, ux, uy);
+				}
+			}
+
+			// the rounded corner
+			float t = circleEntry(vx[i], vy[i], radius);
+			if (t < best)
+				found(b, t, (ox + dx * t - vx[i]) / radius, (oy + dy * t - vy[i]) / radius);
+		}
+	}
+
+	/** Distance along the cast at which it enters the circle, MISS if it never does or starts inside */
+	private float circleEntry(float cx, float cy, float r)
+	{
+		float mx = ox - cx;
+		float my = oy - cy;
+		float c = mx * mx + my * my - r * r;
+		if (c <= 0)
+			return MISS;
+
+		float b = mx * dx + my * dy;
+		if (b > 0)
+			return MISS;
+
+		float disc = b * b - c;
+		if (disc < 0)
+			return MISS;
+
+		return -b - (float) Math.sqrt(disc);
+	}
+
+	/** Distance along the cast at which it enters the box grown by our radius, 0 if it starts inside
+	 * and MISS if it misses, the box is empty or it is further than our best hit */
+	private float boxEntry(float minX, float minY, float maxX, float maxY)
+	{
+		if (minX > maxX || minY > maxY)
+			return MISS;
+
+		minX -= radius;
+		minY -= radius;
+		maxX += radius;
+		maxY += radius;
+
+		float tMin = 0;
+		float tMax = best;
+
+		if (dx == 0)
+		{
+			if (ox < minX || ox > maxX)
+				return MISS;
+		}
+		else
+		{
+			float t1 = (minX - ox) / dx;
+			float t2 = (maxX - ox) / dx;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+
+		if (dy == 0)
+		{
+			if (oy < minY || oy > maxY)
+				return MISS;
+		}
+		else
+		{
+			float t1 = (minY - oy) / dy;
+			float t2 = (maxY - oy) / dy;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+
+		return tMin <= tMax ? tMin : MISS;
+	}
+
+	private void found(RigidBody b, float t, float normalX, float normalY)
+	{
+		best = t;
+		bestBody = b;
+		bestNx = normalX;
+		bestNy = normalY;
+	}
+}
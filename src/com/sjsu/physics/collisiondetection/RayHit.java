@@ -0,0 +1,75 @@
+package com.sjsu.physics.collisiondetection;
+
+import com.sjsu.physics.shapes.RigidBody;
+
+/**
+ * The closest hit of a ray or shape cast. Filled in by RayCaster, keep one and reuse it.
+ *
+ * For a ray the point is where the ray enters the body. For a circle cast it is where the
+ * swept circle first touches the body, the circle's center is then at distance() along the cast.
+ * The normal is the unit surface normal of the body at the point.
+ */
+public class RayHit
+{
+	private RigidBody body;
+	private float distance;
+	private float x;
+	private float y;
+	private float normalX;
+	private float normalY;
+
+	void set(RigidBody b, float dist, float px, float py, float nx, float ny)
+	{
+		body = b;
+		distance = dist;
+		x = px;
+		y = py;
+		normalX = nx;
+		normalY = ny;
+	}
+
+	void clear()
+	{
+		body = null;
+	}
+
+	/** The body that was hit, null if the cast hit nothing */
+	public RigidBody body()
+	{
+		return body;
+	}
+
+	/** Distance along the cast direction to the hit */
+	public float distance()
+	{
+		return distance;
+	}
+
+	public float x()
+	{
+		return x;
+	}
+
+	public float y()
+	{
+		return y;
+	}
+
+	public float normalX()
+	{
+		return normalX;
+	}
+
+	public float normalY()
+	{
+		return normalY;
+	}
+
+	@Override
+	public String toString()
+	{
+		if (body == null)
+			return "No hit";
+		return "Hit " + body.id() + " at " + distance + " (" + x + ", " + y + ") n(" + normalX + ", " + normalY + ")";
+	}
+}
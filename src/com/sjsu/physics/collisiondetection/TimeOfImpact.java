@@ -0,0 +1,300 @@
+package com.sjsu.physics.collisiondetection;
+
+import java.awt.Polygon;
+
+import com.sjsu.physics.shapes.PolyBody;
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+import com.sjsu.physics.utils.Globals;
+import com.sjsu.physics.utils.Vector2;
+
+/**
+ * Time of impact of a fast ("bullet") body over one step, by conservative advancement.
+ *
+ * Every body whose bounds overlap the bullet's swept bounds is a target, held where it is at the
+ * start of the step. Against each target the bullet is advanced by the distance between them divided
+ * by the most the bullet can close that distance per unit of time (its speed plus its spin times its
+ * radius), which can never step past the first touch. Once within LINEAR_SLOP of a target the bullet
+ * stops there, plus a little extra so the contact phase sees the overlap and resolves it. The physics
+ * thread moves it on by the rest of its time once that contact is resolved. A bullet that starts
+ * touching a target is only stopped if it is moving into it, not if it slides along it or moves away.
+ * Sensors, and targets the bullet's collision filter leaves out, are passed through.
+ *
+ * LINEAR_SLOP is the touch tolerance. Globals.ANGULAR_TOLLERANCE is not used for it: at 5 pixels it is
+ * most of a 6 pixel wall, so bullets would stop visibly short of what they hit.
+ *
+ * Reused for every bullet of one physics thread, nothing is allocated per sweep.
+ */
+public class TimeOfImpact implements BodyVisitor
+{
+	private QuadTreeNode[] roots;
+
+	// The bullet and its motion over the whole step
+	private RigidBody bullet;
+	private float startX;
+	private float startY;
+	private float startAngle;
+	private float moveX;
+	private float moveY;
+	private float turn;
+	private float closingBound;
+	private Vector2 velocity = new Vector2();
+
+	// Direction from the target to the bullet at the start of the step, see startNormal
+	private float nx;
+	private float ny;
+
+	// Earliest impact so far, as a fraction of the step
+	private float earliest;
+
+	// Bullet and target vertices in world coords
+	private float[] bx = new float[8];
+	private float[] by = new float[8];
+	private float[] tx = new float[8];
+	private float[] ty = new float[8];
+
+	/** A sweep against the trees of the given roots, normally the roots of every physics thread */
+	public TimeOfImpact(QuadTreeNode[] treeRoots)
+	{
+		roots = treeRoots;
+	}
+
+	/** Fraction of dt the bullet b can move before it hits something, 1 if it hits nothing this step */
+	public float sweep(RigidBody b, float dt)
+	{
+		// the velocities the integrator will move it with, forces and damping included
+		b.predictVelocity(dt, velocity);
+
+		bullet = b;
+		startX = b.center().x;
+		startY = b.center().y;
+		startAngle = b.orientation();
+		moveX = velocity.x * dt;
+		moveY = velocity.y * dt;
+		turn = b.predictAngularVelocity(dt) * dt;
+		earliest = 1;
+
+		// furthest any point of the bullet is from its center
+		float reach = b.bounds().radius();
+		if (b.type() == BodyType.POLYGON)
+			reach = (float) Math.sqrt(Vector2.magnitudeSquared(b.bounds().halfWidth(), b.bounds().halfHeight()));
+
+		float length = (float) Math.sqrt(moveX * moveX + moveY * moveY);
+		closingBound = length + Math.abs(turn) * reach;
+		if (closingBound <= Globals.LINEAR_SLOP)
+			return 1;
+
+		// everything the bullet could reach this step
+		float hw = reach + Globals.LINEAR_SLOP;
+		float minX = Math.min(startX, startX + moveX) - hw;
+		float minY = Math.min(startY, startY + moveY) - hw;
+		float maxX = Math.max(startX, startX + moveX) + hw;
+		float maxY = Math.max(startY, startY + moveY) + hw;
+		for (int i = 0; i < roots.length; i++)
+			roots[i].queryAABB(minX, minY, maxX, maxY, this);
+
+		if (earliest >= 1)
+			return 1;
+
+		// go a little past the touch so the contact phase finds the overlap
+		return Math.min(1, earliest + 2 * Globals.LINEAR_SLOP / closingBound);
+	}
+
+	public boolean visit(RigidBody target)
+	{
+		if (target == bullet || target.localIndex() < 0 || !bullet.canCollideWith(target))
+			return true;
+		if (target.isSensor() || bullet.isSensor())
+			return true;
+
+		float t = 0;
+		for (int i = 0; i < Globals.MAX_ANGULAR_CAST_ITERATIONS; i++)
+		{
+			float d = distance(target, t);
+			if (d <= Globals.LINEAR_SLOP)
+			{
+				// touching at the start only counts if we are moving into it, a bullet resting on the
+				// floor or sliding along a wall is left to the contacts
+				if (t == 0 && !movingInto(target))
+					return true;
+				if (t < earliest)
+					earliest = t;
+				return true;
+			}
+
+			t += d / closingBound;
+			if (t >= earliest)
+				return true;
+		}
+
+		// out of iterations, what we reached is still safe
+		earliest = t;
+		return true;
+	}
+
+	/** Distance between the bullet, moved along by fraction t of the step, and the target. 0 if they overlap */
+	private float distance(RigidBody target, float t)
+	{
+		float px = startX + moveX * t;
+		float py = startY + moveY * t;
+		int nb = 0;
+		int nt = 0;
+
+		if (bullet.type() == BodyType.POLYGON)
+			nb = bulletVertices((PolyBody) bullet, px, py, startAngle + turn * t);
+		if (target.type() == BodyType.POLYGON)
+			nt = targetVertices((PolyBody) target);
+
+		if (nb == 0 && nt == 0)
+		{
+			float d = (float) Math.sqrt(Vector2.distanceSquared(px, py, target.center().x, target.center().y));
+			return Math.max(0, d - bullet.bounds().radius() - target.bounds().radius());
+		}
+		if (nb == 0)
+			return Math.max(0, pointToPolygon(px, py, tx, ty, nt) - bullet.bounds().radius());
+		if (nt == 0)
+			return Math.max(0, pointToPolygon(target.center().x, target.center().y, bx, by, nb) - target.bounds().radius());
+
+		// two convex polygons are apart by their closest vertex and edge
+		float best = Float.MAX_VALUE;
+		for (int i = 0; i < nb; i++)
+			best = Math.min(best, pointToPolygon(bx[i], by[i], tx, ty, nt));
+		for (int i = 0; i < nt; i++)
+			best = Math.min(best, pointToPolygon(tx[i], ty[i], bx, by, nb));
+		return best;
+	}
+
+	/** Whether the bullet, touching the target at the start of the step, moves into it by more than
+	 * LINEAR_SLOP this step. Less than that the contacts resolve, it can not take the bullet through */
+	private boolean movingInto(RigidBody target)
+	{
+		if (!startNormal(target))
+			return true;
+		return -(moveX * nx + moveY * ny) > Globals.LINEAR_SLOP;
+	}
+
+	/** Set (nx, ny) to the unit direction from the target to the bullet where the bullet starts the step,
+	 * the normal of the nearest edge when either is a polygon. False if there is no direction */
+	private boolean startNormal(RigidBody target)
+	{
+		int nb = 0;
+		int nt = 0;
+		if (bullet.type() == BodyType.POLYGON)
+			nb = bulletVertices((PolyBody) bullet, startX, startY, startAngle);
+		if (target.type() == BodyType.POLYGON)
+			nt = targetVertices((PolyBody) target);
+
+		float cx = target.center().x;
+		float cy = target.center().y;
+		nx = startX - cx;
+		ny = startY - cy;
+
+		// points of one against the edges of the other, the closest edge's normal pushes them apart
+		float best = Float.MAX_VALUE;
+		if (nt > 0 && nb == 0)
+			best = closestEdge(startX, startY, tx, ty, nt, 1, best);
+		for (int i = 0; i < nb && nt > 0; i++)
+			best = closestEdge(bx[i], by[i], tx, ty, nt, 1, best);
+		if (nb > 0 && nt == 0)
+			best = closestEdge(cx, cy, bx, by, nb, -1, best);
+		for (int i = 0; i < nt && nb > 0; i++)
+			best = closestEdge(tx[i], ty[i], bx, by, nb, -1, best);
+
+		float length = (float) Math.sqrt(nx * nx + ny * ny);
+		if (length < Globals.EPSILON)
+			return false;
+		nx /= length;
+		ny /= length;
+		return true;
+	}
+
+	/** If an edge of the polygon xs / ys is closer to (x, y) than best, set (nx, ny) to its outward
+	 * normal times sign. Returns the closest squared distance so far */
+	private float closestEdge(float x, float y, float[] xs, float[] ys, int n, float sign, float best)
+	{
+		// the normals are turned away from the middle, so the winding does not matter
+		float mx = 0;
+		float my = 0;
+		for (int i = 0; i < n; i++)
+		{
+			mx += xs[i] / n;
+			my += ys[i] / n;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			float d = Vector2.distanceToEdgeSquared(x, y, xs[i], ys[i], xs[j], ys[j]);
+			if (d >= best)
+				continue;
+
+			best = d;
+			float ox = ys[j] - ys[i];
+			float oy = xs[i] - xs[j];
+			if (ox * ((xs[i] + xs[j]) / 2 - mx) + oy * ((ys[i] + ys[j]) / 2 - my) < 0)
+			{
+				ox = -ox;
+				oy = -oy;
+			}
+			nx = ox * sign;
+			ny = oy * sign;
+		}
+		return best;
+	}
+
+	/** Vertices of the bullet placed at (x, y) turned to angle */
+	private int bulletVertices(PolyBody p, float x, float y, float angle)
+	{
+		Polygon local = p.polygon();
+		int n = local.npoints;
+		if (bx.length < n)
+		{
+			bx = new float[n];
+			by = new float[n];
+		}
+
+		float cs = (float) Math.cos(angle);
+		float sn = (float) Math.sin(angle);
+		for (int i = 0; i < n; i++)
+		{
+			bx[i] = local.xpoints[i] * cs - local.ypoints[i] * sn + x;
+			by[i] = local.xpoints[i] * sn + local.ypoints[i] * cs + y;
+		}
+		return n;
+	}
+
+	private int targetVertices(PolyBody p)
+	{
+		int n = p.numVertices();
+		if (tx.length < n)
+		{
+			tx = new float[n];
+			ty = new float[n];
+		}
+		p.verticesWorld(tx, ty);
+		return n;
+	}
+
+	/** Distance from (x, y) to the convex polygon xs / ys, 0 if the point is inside it */
+	private static float pointToPolygon(float x, float y, float[] xs, float[] ys, int n)
+	{
+		float best = Float.MAX_VALUE;
+		int side = 0;
+		boolean inside = true;
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			best = Math.min(best, Vector2.distanceToEdgeSquared(x, y, xs[i], ys[i], xs[j], ys[j]));
+
+			float c = Vector2.cross(xs[j] - xs[i], ys[j] - ys[i], x - xs[i], y - ys[i]);
+			int s = c > 0 ? 1 : (c < 0 ? -1 : 0);
+			if (s != 0)
+			{
+				if (side != 0 && s != side)
+					inside = false;
+				side = s;
+			}
+		}
+		return inside ? 0 : (float) Math.sqrt(best);
+	}
+}
@@ -0,0 +1,59 @@
+package com.sjsu.physics.core;
+
+import com.sjsu.physics.shapes.RigidBody;
+
+/**
+ * A change to the world requested from outside the step.
+ * 
+ * Any thread may queue commands on a world. They are applied in the order they
+ * were queued, all at once at the start of the next step while no physics thread
+ * is running, so game and UI code never touch a body the physics threads are using.
+ */
+class BodyCommand
+{
+	static final int ADD = 0;
+	static final int REMOVE = 1;
+	static final int SET_VELOCITY = 2;
+	static final int APPLY_IMPULSE = 3;
+	static final int TELEPORT = 4;
+	static final int RADIAL_IMPULSE = 5;
+	static final int SET_RATE_LIMITER = 6;
+	static final int LIMITER_SETTINGS = 7;
+
+	int type;
+	int handle;
+	RigidBody body;
+	float x;
+	float y;
+
+	// Only used by RADIAL_IMPULSE, which is centered on (x, y) and has no body
+	float radius;
+	float strength;
+	World.Falloff falloff;
+
+	// Only used by SET_RATE_LIMITER (null goes back to free-running) and LIMITER_SETTINGS
+	StepRateLimiter limiter;
+
+	BodyCommand(int type, int handle, RigidBody body, float x, float y)
+	{
+		this.type = type;
+		this.handle = handle;
+		this.body = body;
+		this.x = x;
+		this.y = y;
+	}
+
+	BodyCommand(float x, float y, float radius, float strength, World.Falloff falloff)
+	{
+		this(RADIAL_IMPULSE, BodySlotMap.INVALID_HANDLE, null, x, y);
+		this.radius = radius;
+		this.strength = strength;
+		this.falloff = falloff;
+	}
+
+	BodyCommand(int type, StepRateLimiter limiter)
+	{
+		this(type, BodySlotMap.INVALID_HANDLE, null, 0, 0);
+		this.limiter = limiter;
+	}
+}
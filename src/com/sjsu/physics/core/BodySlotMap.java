@@ -0,0 +1,223 @@
+package com.sjsu.physics.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.sjsu.physics.shapes.RigidBody;
+
+/**
+ * Slot map from integer handles to rigid bodies.
+ * 
+ * A handle packs the slot index in its low bits and the slot's generation in its
+ * high bits. Removing a body bumps the generation of its slot, so a stale handle
+ * never resolves to whatever body reuses the slot later. Add, remove and lookup
+ * are all O(1); freed slots are kept on a stack and reused first.
+ * 
+ * Lookups take no lock, so physics threads can resolve handles while bodies are
+ * added or removed. A handle can also be reserved ahead of time, the body only
+ * goes into its slot when it is inserted.
+ */
+public class BodySlotMap
+{
+	public static final int INVALID_HANDLE = -1;
+
+	private static final int INDEX_BITS = 20;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1; // keeps handles positive
+
+	// Written under the lock and read without it. A slot is cleared before its generation
+	// moves on, and the arrays are only ever replaced whole when they grow
+	private volatile AtomicReferenceArray<RigidBody> bodies;
+	private volatile AtomicIntegerArray generations;
+	private volatile int usedSlots; // slots that have ever been handed out
+	private volatile int size;
+
+	// Slots free to hand out, only touched under the lock
+	private int[] freeSlots;
+	private int freeCount;
+
+	public BodySlotMap(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		bodies = new AtomicReferenceArray<RigidBody>(capacity);
+		generations = new AtomicIntegerArray(capacity);
+		freeSlots = new int[capacity];
+		freeCount = 0;
+		usedSlots = 0;
+		size = 0;
+	}
+
+	/** Store a body and return its handle */
+	public synchronized int add(RigidBody b)
+	{
+		int handle = reserve();
+		insert(handle, b);
+		return handle;
+	}
+
+	/** Hand out the handle of a free slot without storing anything in it yet, see insert */
+	public synchronized int reserve()
+	{
+		int index;
+		if (freeCount > 0)
+			index = freeSlots[--freeCount];
+		else
+		{
+			if (usedSlots > INDEX_MASK)
+				throw new IndexOutOfBoundsException("Too many bodies for the slot map");
+			index = usedSlots++;
+		}
+
+		// a fresh slot past the end of our arrays starts at generation 0
+		int generation = index < generations.length() ? generations.get(index) : 0;
+		return (generation << INDEX_BITS) | index;
+	}
+
+	/** Store a body under a handle handed out by reserve */
+	public synchronized void insert(int handle, RigidBody b)
+	{
+		int index = index(handle);
+		while (index >= bodies.length())
+			grow();
+
+		bodies.set(index, b);
+		size++;
+	}
+
+	/** Give back a reserved handle that was never inserted, it is stale from now on */
+	public synchronized void release(int handle)
+	{
+		int index = index(handle);
+		while (index >= bodies.length())
+			grow();
+
+		free(index);
+	}
+
+	/** Remove the body a handle refers to. Returns it, or null if the handle is stale */
+	public synchronized RigidBody remove(int handle)
+	{
+		RigidBody b = get(handle);
+		if (b == null)
+			return null;
+
+		bodies.set(index(handle), null);
+		free(index(handle));
+		size--;
+		return b;
+	}
+
+	/** Returns the body a handle refers to, or null if it was removed (or is only reserved). Takes no lock */
+	public RigidBody get(int handle)
+	{
+		if (handle < 0)
+			return null;
+
+		AtomicReferenceArray<RigidBody> b = bodies;
+		AtomicIntegerArray g = generations;
+		int index = index(handle);
+		if (index >= b.length() || index >= g.length())
+			return null;
+
+		// the body is read first: had its slot been reused since, the generation has moved on
+		RigidBody body = b.get(index);
+		if (body == null || g.get(index) != generation(handle))
+			return null;
+
+		return body;
+	}
+
+	/** Check if a handle was reserved and nothing is stored under it yet */
+	public boolean isReserved(int handle)
+	{
+		if (handle < 0 || index(handle) >= usedSlots)
+			return false;
+
+		AtomicIntegerArray g = generations;
+		int index = index(handle);
+		int generation = index < g.length() ? g.get(index) : 0;
+		return bodyAt(index) == null && generation == generation(handle);
+	}
+
+	/** Returns the body in slot index, or null if the slot is free. For walking every body, index < slotCount() */
+	public RigidBody bodyAt(int index)
+	{
+		AtomicReferenceArray<RigidBody> b = bodies;
+		return index < b.length() ? b.get(index) : null;
+	}
+
+	/** Check if the handle still refers to a live body */
+	public boolean contains(int handle)
+	{
+		return get(handle) != null;
+	}
+
+	/** Number of live bodies */
+	public int size()
+	{
+		return size;
+	}
+
+	/** Number of slots handed out so far, every live handle's index is below this */
+	public int slotCount()
+	{
+		return usedSlots;
+	}
+
+	public static int index(int handle)
+	{
+		return handle & INDEX_MASK;
+	}
+
+	public static int generation(int handle)
+	{
+		return (handle >>> INDEX_BITS) & GENERATION_MASK;
+	}
+
+	/** Pack a pair of handles into one key, ordered by first then second handle */
+	public static long pairKey(int first, int second)
+	{
+		return ((long) first << 32) | (second & 0xFFFFFFFFL);
+	}
+
+	public static int firstOf(long pairKey)
+	{
+		return (int) (pairKey >>> 32);
+	}
+
+	public static int secondOf(long pairKey)
+	{
+		return (int) pairKey;
+	}
+
+	/** Move slot index on to its next generation and put it back on the free stack */
+	private void free(int index)
+	{
+		generations.set(index, (generations.get(index) + 1) & GENERATION_MASK);
+		if (freeCount == freeSlots.length)
+		{
+			int[] grown = new int[freeSlots.length * 2];
+			System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+			freeSlots = grown;
+		}
+		freeSlots[freeCount++] = index;
+	}
+
+	private void grow()
+	{
+		int length = bodies.length();
+		int capacity = Math.min(length * 2, INDEX_MASK + 1);
+
+		AtomicReferenceArray<RigidBody> newBodies = new AtomicReferenceArray<RigidBody>(capacity);
+		AtomicIntegerArray newGenerations = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < length; i++)
+		{
+			newBodies.set(i, bodies.get(i));
+			newGenerations.set(i, generations.get(i));
+		}
+
+		// generations first, a reader that sees the new bodies then sees the new generations too
+		generations = newGenerations;
+		bodies = newBodies;
+	}
+}
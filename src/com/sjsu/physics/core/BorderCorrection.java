@@ -0,0 +1,42 @@
+package com.sjsu.physics.core;
+
+import com.sjsu.physics.shapes.RigidBody;
+
+/**
+ * A change to a body owned by another thread.
+ * 
+ * When a thread resolves a contact against a ghost (the read-only copy of another
+ * thread's border body) it cannot touch the real body. Instead the change the solver
+ * worked out for the ghost is kept by the thread that made it, and the owning
+ * thread applies it in its hand off phase. Corrections are reused every step.
+ */
+class BorderCorrection
+{
+	RigidBody body;
+	int owner;
+	float velocityX;
+	float velocityY;
+	float angularVelocity;
+	float moveX;
+	float moveY;
+
+	/** Take the ghost changes recorded by a resolved contact, the owner is the thread that published the ghost */
+	void set(Contact c)
+	{
+		body = c.ghost().ghostOf();
+		owner = c.ghost().process();
+		velocityX = c.ghostVelocityX();
+		velocityY = c.ghostVelocityY();
+		angularVelocity = c.ghostAngularVelocity();
+		moveX = c.ghostMoveX();
+		moveY = c.ghostMoveY();
+	}
+
+	/** Apply the change to the real body, only to be called by its owning thread */
+	void apply()
+	{
+		body.velocity().add(velocityX, velocityY);
+		body.addAngularVelocity(angularVelocity);
+		body.center().add(moveX, moveY);
+	}
+}
@@ -19,12 +19,43 @@ public class Contact
 	private float restitution;
 	private float penetration;
 
+	// Gap between the bodies of a speculative contact, they are not touching yet. 0 for a real contact
+	private float separation;
+
+	// Total impulse the solver applied along the normal, over all its passes
+	private float impulse;
+
+	// Changes meant for a ghost body. Ghosts are read-only snapshots of another
+	// thread's body, so the solver records the change here for the owner to apply
+	private float ghostVelocityX;
+	private float ghostVelocityY;
+	private float ghostAngularVelocity;
+	private float ghostMoveX;
+	private float ghostMoveY;
+
 	public Contact(RigidBody bodyA, RigidBody bodyB, float r, float p)
+	{
+		contactPoint = new Vector2();
+		contactNormal = new Vector2();
+		reset(bodyA, bodyB, r, p);
+	}
+
+	/** Reuse this contact for a new pair of bodies. Used by the ContactBuffer pool */
+	public void reset(RigidBody bodyA, RigidBody bodyB, float r, float p)
 	{
 		a = bodyA;
 		b = bodyB;
 		restitution = r;
 		penetration = p;
+		separation = 0;
+		impulse = 0;
+		contactPoint.setZero();
+		contactNormal.setZero();
+		ghostVelocityX = 0;
+		ghostVelocityY = 0;
+		ghostAngularVelocity = 0;
+		ghostMoveX = 0;
+		ghostMoveY = 0;
 	}
 
 	/** Resolve the contact (angular and linear components) */
@@ -34,57 +65,72 @@ public class Contact
 		resolvePenetration(dt);
 	}
 
-	/** Resolve the contact for duration t */
-	private void resolveVelocity(float dt)
+	/** Resolve the contact for duration t. Returns false if the bodies were already separating */
+	protected boolean resolveVelocity(float dt)
 	{
-		// f the objects are already moving apart (Vs > 0), we do not need to resolve
+		// f the objects are already moving apart (Vs > 0), we do not need to resolve.
+		// Bodies of a speculative contact may still close their gap this step, only what is faster matters
 		float velAlongNorm = velocityAlongNormal();
-		if (velAlongNorm > 0)
-			return;
+		float closingVel = velAlongNorm + separation / dt;
+		if (velAlongNorm > 0 || (separation > 0 && closingVel >= 0))
+			return false;
 
 		// If we have an infinite mass system, impulses have no affect, no need to resolve
-		float sumInverseMass = a.inverseMass() + b.inverseMass();
+		float imA = a.inverseMass();
+		float imB = b.inverseMass();
+		float sumInverseMass = imA + imB;
 		if (sumInverseMass <= 0)
-			return;
+			return false;
 
-		// calc impulse scalar
+		// calc impulse scalar. A speculative contact has not hit yet so there is nothing to bounce,
+		// it only stops the bodies so they just touch by the end of the next step
 		float j = -(1 + restitution) * velAlongNorm;
-		j = j / (a.inverseMass() + b.inverseMass());
-		Vector2 impulse = contactNormal.multiplyBy(j);
+		if (separation > 0)
+			j = -closingVel;
+		j = j / sumInverseMass;
+		impulse += j;
+		float impulseX = contactNormal.x * j;
+		float impulseY = contactNormal.y * j;
 
 		// Apply impulses to rigid bodies
-		Vector2 iA = impulse.multiplyBy(a.inverseMass());
-		Vector2 iB = impulse.multiplyBy(b.inverseMass());
-		Vector2 Va = a.velocity().subtractBy(iA);
-		Vector2 Vb = b.velocity().addTo(iB);
-
-		if (Va.magnitudeSquared() < Globals.SLEEP_EPSILON)
-			Va = Globals.ZERO_VECTOR;
-		if (Vb.magnitudeSquared() < Globals.SLEEP_EPSILON)
-			Vb = Globals.ZERO_VECTOR;
-
-		a.setVelocity(Va);
-		b.setVelocity(Vb);
+		Vector2 Va = a.velocity();
+		Vector2 Vb = b.velocity();
+		float vaX = Va.x - impulseX * imA;
+		float vaY = Va.y - impulseY * imA;
+		float vbX = Vb.x + impulseX * imB;
+		float vbY = Vb.y + impulseY * imB;
+
+		if (Vector2.magnitudeSquared(vaX, vaY) < Globals.SLEEP_EPSILON)
+			setVelocity(a, 0, 0);
+		else
+			setVelocity(a, vaX, vaY);
+		if (Vector2.magnitudeSquared(vbX, vbY) < Globals.SLEEP_EPSILON)
+			setVelocity(b, 0, 0);
+		else
+			setVelocity(b, vbX, vbY);
 
 		// calculate angular velocity
-		Vector2 aToContact = a.center().subtractBy(contactPoint);
-		Vector2 bToContact = b.center().subtractBy(contactPoint);
+		float aToContactX = a.center().x - contactPoint.x;
+		float aToContactY = a.center().y - contactPoint.y;
+		float bToContactX = b.center().x - contactPoint.x;
+		float bToContactY = b.center().y - contactPoint.y;
 
 		// impulsive torque = impulse cross relativeContactPos
-		float impulsiveTorqueA = aToContact.cross(impulse);
-		float impulsiveTorqueB = -bToContact.cross(impulse);
+		float impulsiveTorqueA = Vector2.cross(aToContactX, aToContactY, impulseX, impulseY);
+		float impulsiveTorqueB = -Vector2.cross(bToContactX, bToContactY, impulseX, impulseY);
 
 		// take into account body mass helps realism on rotation
-		impulsiveTorqueA *= (10 * a.inverseMass());
-		impulsiveTorqueB *= (10 * b.inverseMass());
+		impulsiveTorqueA *= (10 * imA);
+		impulsiveTorqueB *= (10 * imB);
 
 		if (impulsiveTorqueA < Globals.EPSILON && impulsiveTorqueA > -Globals.EPSILON)
 			impulsiveTorqueA = 0;
 		if (impulsiveTorqueB < Globals.EPSILON && impulsiveTorqueB > -Globals.EPSILON)
 			impulsiveTorqueB = 0;
 
-		a.addAngularVelocity(contactNormal.cross(a.inverseMoment()) * impulsiveTorqueA);
-		b.addAngularVelocity(contactNormal.cross(b.inverseMoment()) * impulsiveTorqueB);
+		addAngularVelocity(a, contactNormal.cross(a.inverseMoment()) * impulsiveTorqueA);
+		addAngularVelocity(b, contactNormal.cross(b.inverseMoment()) * impulsiveTorqueB);
+		return true;
 	}
 
 	/**
@@ -105,20 +151,53 @@ public class Contact
 			return;
 
 		/* Distance needed to move per invese mass */
-		Vector2 distPerIMass = contactNormal.multiplyBy(penetration / sumInverseMass);
+		float distPerIMass = penetration / sumInverseMass;
 
-		a.setCenter(distPerIMass.multiplyBy(a.inverseMass()).addTo(a.center()));
-		b.setCenter(distPerIMass.multiplyBy(b.inverseMass()).addTo(b.center()));
+		move(a, distPerIMass * a.inverseMass());
+		move(b, distPerIMass * b.inverseMass());
+	}
+
+	/* The three ways the solver changes a body. Ghost bodies are never written, the change is kept instead */
+
+	private void setVelocity(RigidBody body, float vx, float vy)
+	{
+		if (body.isGhost())
+		{
+			ghostVelocityX += vx - body.velocity().x;
+			ghostVelocityY += vy - body.velocity().y;
+		}
+		else
+			body.velocity().set(vx, vy);
+	}
+
+	private void addAngularVelocity(RigidBody body, float w)
+	{
+		if (body.isGhost())
+			ghostAngularVelocity += w;
+		else
+			body.addAngularVelocity(w);
+	}
+
+	private void move(RigidBody body, float scale)
+	{
+		if (body.isGhost())
+		{
+			ghostMoveX += contactNormal.x * scale;
+			ghostMoveY += contactNormal.y * scale;
+		}
+		else
+			body.center().addScaled(contactNormal, scale);
 	}
 
 	/** Calculate the velocity at which the two objects are moving apart */
 	protected float velocityAlongNormal()
 	{
-		// Relative velocity = Va - Vb
-		Vector2 Vrelative = b.velocity().subtractBy(a.velocity());
+		// Relative velocity = Vb - Va
+		float vRelX = b.velocity().x - a.velocity().x;
+		float vRelY = b.velocity().y - a.velocity().y;
 
 		// Separting velocity = Vr dot N
-		return Vrelative.dot(contactNormal);
+		return Vector2.dot(vRelX, vRelY, contactNormal.x, contactNormal.y);
 	}
 
 	public void setRestitution(float r)
@@ -131,14 +210,32 @@ public class Contact
 		penetration = p;
 	}
 
+	/** Make this a speculative contact between bodies s apart */
+	public void setSeparation(float s)
+	{
+		separation = s;
+	}
+
+	/** Copies v into this contact's normal */
 	public void setNormal(Vector2 v)
 	{
-		contactNormal = v;
+		contactNormal.set(v);
+	}
+
+	public void setNormal(float x, float y)
+	{
+		contactNormal.set(x, y);
 	}
 
+	/** Copies p into this contact's contact point */
 	public void setContactPoint(Vector2 p)
 	{
-		contactPoint = p;
+		contactPoint.set(p);
+	}
+
+	public void setContactPoint(float x, float y)
+	{
+		contactPoint.set(x, y);
 	}
 
 	public Vector2 normal()
@@ -151,6 +248,41 @@ public class Contact
 		return contactPoint;
 	}
 
+	/** Returns the ghost body of this contact, or null if both bodies are real */
+	public RigidBody ghost()
+	{
+		if (a.isGhost())
+			return a;
+		if (b.isGhost())
+			return b;
+		return null;
+	}
+
+	public float ghostVelocityX()
+	{
+		return ghostVelocityX;
+	}
+
+	public float ghostVelocityY()
+	{
+		return ghostVelocityY;
+	}
+
+	public float ghostAngularVelocity()
+	{
+		return ghostAngularVelocity;
+	}
+
+	public float ghostMoveX()
+	{
+		return ghostMoveX;
+	}
+
+	public float ghostMoveY()
+	{
+		return ghostMoveY;
+	}
+
 	public RigidBody a()
 	{
 		return a;
@@ -166,6 +298,17 @@ public class Contact
 		return restitution;
 	}
 
+	public float separation()
+	{
+		return separation;
+	}
+
+	/** Impulse the solver applied to separate the bodies, 0 until the contact is resolved */
+	public float impulse()
+	{
+		return impulse;
+	}
+
 	public float penetration()
 	{
 		return penetration;
@@ -0,0 +1,128 @@
+package com.sjsu.physics.core;
+
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.utils.Globals;
+
+/**
+ * A pool of preallocated contacts, one per physics thread.
+ * 
+ * Contacts are handed out in order with obtain() and all of them are given back
+ * at once with clear() at the end of every step. The pool only grows (by doubling)
+ * so once a scene reaches its steady contact count no more Contacts are allocated.
+ * 
+ * Also keeps a few scratch float arrays for the narrowphase so polygon vertices
+ * can be transformed without allocating.
+ */
+public class ContactBuffer
+{
+	private static final int NUM_SCRATCH = 8;
+
+	private Contact[] contacts;
+	private int size;
+	private float[][] scratch;
+	private float restitution;
+
+	public ContactBuffer(int capacity)
+	{
+		contacts = new Contact[Math.max(capacity, 1)];
+		for (int i = 0; i < contacts.length; i++)
+			contacts[i] = new Contact(null, null, 0, 0);
+
+		size = 0;
+		scratch = new float[NUM_SCRATCH][];
+		restitution = Globals.DEFAULT_RESTITUTION;
+	}
+
+	/** Return a reset contact for bodies a and b, growing the pool if needed */
+	public Contact obtain(RigidBody a, RigidBody b, float restitution, float penetration)
+	{
+		if (size == contacts.length)
+			grow();
+
+		Contact c = contacts[size++];
+		c.reset(a, b, restitution, penetration);
+		return c;
+	}
+
+	/** Give back the most recently obtained contact (ie the narrowphase found no contact after all) */
+	public void discardLast()
+	{
+		if (size > 0)
+		{
+			size--;
+			contacts[size].reset(null, null, 0, 0);
+		}
+	}
+
+	/** Check if the buffer already holds a contact between a and b (in either order) */
+	public boolean containsPair(RigidBody a, RigidBody b)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			Contact c = contacts[i];
+			if ((c.a() == a || c.a() == b) && (c.b() == a || c.b() == b))
+				return true;
+		}
+
+		return false;
+	}
+
+	/** Hand every contact back to the pool, to be called once per step */
+	public void clear()
+	{
+		// drop body references so removed bodies are not kept alive by the pool
+		for (int i = 0; i < size; i++)
+			contacts[i].reset(null, null, 0, 0);
+
+		size = 0;
+	}
+
+	/** Restitution the narrowphase gives new contacts */
+	public float restitution()
+	{
+		return restitution;
+	}
+
+	public void setRestitution(float r)
+	{
+		restitution = r;
+	}
+
+	public Contact get(int i)
+	{
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Contact " + i + " >= size " + size);
+
+		return contacts[i];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int capacity()
+	{
+		return contacts.length;
+	}
+
+	/** Return scratch array number n holding at least length floats. Contents are undefined */
+	public float[] scratch(int n, int length)
+	{
+		if (scratch[n] == null || scratch[n].length < length)
+			scratch[n] = new float[Math.max(length, 8)];
+
+		return scratch[n];
+	}
+
+	/** Double the number of pooled contacts */
+	private void grow()
+	{
+		Contact[] bigger = new Contact[contacts.length * 2];
+		System.arraycopy(contacts, 0, bigger, 0, contacts.length);
+		for (int i = contacts.length; i < bigger.length; i++)
+			bigger[i] = new Contact(null, null, 0, 0);
+
+		contacts = bigger;
+	}
+}
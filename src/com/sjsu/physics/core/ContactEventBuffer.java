@@ -0,0 +1,104 @@
+package com.sjsu.physics.core;
+
+import java.util.Arrays;
+
+/**
+ * The contact events of one step, as flat primitive arrays read by index.
+ *
+ * Every pair of bodies touching this step has one event, BEGIN if they were not touching last step
+ * and PERSIST if they were, and every pair that stopped touching has an END. Bodies are given by
+ * handle with bodyA below bodyB, the normal points from A to B. The point and normal are those of
+ * the pair's last contact this step, the impulse is the total the solver applied to push the pair
+ * apart over the whole step. An END keeps the point and normal of the pair's last contact and has
+ * no impulse. Refilled by the world every step, nothing is allocated once it has grown to fit.
+ */
+public class ContactEventBuffer
+{
+	public static final int BEGIN = 0;
+	public static final int PERSIST = 1;
+	public static final int END = 2;
+
+	// floats per contact: point x, y, normal x, y and impulse. Threads record their contacts the same way
+	static final int STRIDE = 5;
+
+	private int[] types;
+	private int[] bodies;
+	private float[] data;
+	private int count;
+
+	ContactEventBuffer()
+	{
+		types = new int[16];
+		bodies = new int[16 * 2];
+		data = new float[16 * STRIDE];
+	}
+
+	void add(int type, int a, int b, float[] from, int offset)
+	{
+		if (count == types.length)
+		{
+			types = Arrays.copyOf(types, count * 2);
+			bodies = Arrays.copyOf(bodies, count * 2 * 2);
+			data = Arrays.copyOf(data, count * 2 * STRIDE);
+		}
+
+		types[count] = type;
+		bodies[count * 2] = a;
+		bodies[count * 2 + 1] = b;
+		System.arraycopy(from, offset, data, count * STRIDE, STRIDE);
+		if (type == END)
+			data[count * STRIDE + 4] = 0;
+		count++;
+	}
+
+	void clear()
+	{
+		count = 0;
+	}
+
+	public int count()
+	{
+		return count;
+	}
+
+	/** BEGIN, PERSIST or END */
+	public int type(int i)
+	{
+		return types[i];
+	}
+
+	public int bodyA(int i)
+	{
+		return bodies[i * 2];
+	}
+
+	public int bodyB(int i)
+	{
+		return bodies[i * 2 + 1];
+	}
+
+	public float pointX(int i)
+	{
+		return data[i * STRIDE];
+	}
+
+	public float pointY(int i)
+	{
+		return data[i * STRIDE + 1];
+	}
+
+	public float normalX(int i)
+	{
+		return data[i * STRIDE + 2];
+	}
+
+	public float normalY(int i)
+	{
+		return data[i * STRIDE + 3];
+	}
+
+	public float impulse(int i)
+	{
+		return data[i * STRIDE + 4];
+	}
+}
@@ -0,0 +1,11 @@
+package com.sjsu.physics.core;
+
+/*
+ * Given the contact events of a step, once the step is done, on the thread
+ * that stepped the world. The buffer is reused and refilled every step, read
+ * what is needed from it before returning.
+ */
+public interface ContactEventListener
+{
+	void contactEvents(World world, ContactEventBuffer events);
+}
@@ -0,0 +1,188 @@
+package com.sjsu.physics.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns the contacts the physics threads resolve each step into begin, persist and end events.
+ *
+ * Threads record every touching contact they resolve as a pair key (BodySlotMap.pairKey of the lower
+ * handle and the higher one) and its point, normal and impulse. Once a step is done the records of
+ * every thread are gathered and sorted by key, records of the same pair (from several substeps) are
+ * merged, and a single merge against last step's sorted pairs tells which pairs began, persisted or
+ * ended. A pair whose body was removed has ended. Nothing is allocated once the arrays have grown to fit.
+ */
+class ContactEventTracker
+{
+	private static final int STRIDE = ContactEventBuffer.STRIDE;
+
+	// Records of this step in the order the threads gave them, and their order sorted by key
+	private long[] recordKeys = new long[16];
+	private float[] recordData = new float[16 * STRIDE];
+	private int[] order = new int[16];
+	private int recordCount;
+
+	// One entry per pair, sorted by key, for this step and the last
+	private long[] current = new long[16];
+	private float[] currentData = new float[16 * STRIDE];
+	private int currentCount;
+	private long[] previous = new long[16];
+	private float[] previousData = new float[16 * STRIDE];
+	private int previousCount;
+
+	private ContactEventBuffer events = new ContactEventBuffer();
+
+	/** Gather this step's contacts from every thread and give the events to listener. Without a
+	 * listener nothing is tracked, pairs touching once one is set begin then */
+	void update(World world, List<PhysicsThread> threads, ContactEventListener listener)
+	{
+		if (listener == null)
+		{
+			previousCount = 0;
+			return;
+		}
+
+		gather(world, threads);
+		sortRecords();
+		mergePairs();
+
+		events.clear();
+		int c = 0;
+		int p = 0;
+		while (c < currentCount || p < previousCount)
+		{
+			if (p == previousCount || (c < currentCount && current[c] < previous[p]))
+			{
+				addEvent(ContactEventBuffer.BEGIN, current[c], currentData, c);
+				c++;
+			}
+			else if (c == currentCount || previous[p] < current[c])
+			{
+				addEvent(ContactEventBuffer.END, previous[p], previousData, p);
+				p++;
+			}
+			else
+			{
+				addEvent(ContactEventBuffer.PERSIST, current[c], currentData, c);
+				c++;
+				p++;
+			}
+		}
+
+		long[] swapKeys = previous;
+		float[] swapData = previousData;
+		previous = current;
+		previousData = currentData;
+		previousCount = currentCount;
+		current = swapKeys;
+		currentData = swapData;
+		currentCount = 0;
+
+		if (events.count() > 0)
+			listener.contactEvents(world, events);
+	}
+
+	private void addEvent(int type, long key, float[] data, int i)
+	{
+		events.add(type, BodySlotMap.firstOf(key), BodySlotMap.secondOf(key), data, i * STRIDE);
+	}
+
+	/** Copy every thread's records of live pairs */
+	private void gather(World world, List<PhysicsThread> threads)
+	{
+		recordCount = 0;
+		for (int i = 0; i < threads.size(); i++)
+		{
+			PhysicsThread t = threads.get(i);
+			long[] keys = t.contactKeys();
+			float[] data = t.contactData();
+			for (int k = 0; k < t.contactRecordCount(); k++)
+			{
+				long key = keys[k];
+				if (world.body(BodySlotMap.firstOf(key)) == null || world.body(BodySlotMap.secondOf(key)) == null)
+					continue;
+
+				if (recordCount == recordKeys.length)
+				{
+					recordKeys = Arrays.copyOf(recordKeys, recordCount * 2);
+					recordData = Arrays.copyOf(recordData, recordCount * 2 * STRIDE);
+					order = new int[recordCount * 2];
+				}
+				recordKeys[recordCount] = key;
+				System.arraycopy(data, k * STRIDE, recordData, recordCount * STRIDE, STRIDE);
+				recordCount++;
+			}
+		}
+	}
+
+	/** Heap sort the record numbers by key, the records themselves stay where they are */
+	private void sortRecords()
+	{
+		int n = recordCount;
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+
+		for (int i = n / 2 - 1; i >= 0; i--)
+			siftDown(i, n);
+
+		for (int end = n - 1; end > 0; end--)
+		{
+			int top = order[0];
+			order[0] = order[end];
+			order[end] = top;
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(int i, int n)
+	{
+		int item = order[i];
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= n)
+				break;
+			if (child + 1 < n && after(order[child + 1], order[child]))
+				child++;
+			if (!after(order[child], item))
+				break;
+			order[i] = order[child];
+			i = child;
+		}
+		order[i] = item;
+	}
+
+	/** Whether record a sorts after record b. Records of the same pair stay in the order they were made */
+	private boolean after(int a, int b)
+	{
+		return recordKeys[a] > recordKeys[b] || (recordKeys[a] == recordKeys[b] && a > b);
+	}
+
+	/** One entry per pair in key order. A pair resolved in several substeps keeps its last point and
+	 * normal and the sum of its impulses */
+	private void mergePairs()
+	{
+		if (current.length < recordCount)
+		{
+			current = new long[recordKeys.length];
+			currentData = new float[recordKeys.length * STRIDE];
+		}
+
+		currentCount = 0;
+		for (int i = 0; i < recordCount; i++)
+		{
+			int r = order[i];
+			if (currentCount > 0 && current[currentCount - 1] == recordKeys[r])
+			{
+				float impulse = currentData[(currentCount - 1) * STRIDE + 4];
+				System.arraycopy(recordData, r * STRIDE, currentData, (currentCount - 1) * STRIDE, STRIDE);
+				currentData[(currentCount - 1) * STRIDE + 4] += impulse;
+				continue;
+			}
+
+			current[currentCount] = recordKeys[r];
+			System.arraycopy(recordData, r * STRIDE, currentData, currentCount * STRIDE, STRIDE);
+			currentCount++;
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package com.sjsu.physics.core;
 
-import java.util.ArrayList;
-
 import com.sjsu.physics.utils.Globals;
 
 public class ContactSolver
@@ -28,18 +26,42 @@ public class ContactSolver
 	}
 
 	/**
-	 *  Resolve a list of contacts
+	 *  Resolve every contact in the buffer. The caller clears the buffer once it is done with the results.
+	 *  After the first pass, up to maxIterations - 1 more velocity passes fix contacts that a neighbouring
+	 *  contact pushed back together (stacks, chains). Contacts with a ghost only get the first pass, the
+	 *  ghost's velocity does not change here so a second impulse would be applied twice.
 	 * TODO we should be resolving contacts based on highest velocity first to reduce adding noise
 	 */
-	public void resolveContacts(ArrayList<Contact> contacts, float time)
+	public void resolveContacts(ContactBuffer contacts, float time)
 	{
 		curIteration = 0;
 
 		for (int i = 0; i < contacts.size(); i++)
-		{
 			contacts.get(i).resolve(time);
-			contacts.remove(i);
+
+		for (curIteration = 1; curIteration < maxIterations; curIteration++)
+		{
+			boolean changed = false;
+			for (int i = 0; i < contacts.size(); i++)
+			{
+				Contact c = contacts.get(i);
+				if (c.ghost() == null && c.resolveVelocity(time))
+					changed = true;
+			}
+
+			if (!changed)
+				break;
 		}
 	}
 
+	public void setIterations(int iterations)
+	{
+		maxIterations = iterations;
+	}
+
+	public int iterations()
+	{
+		return maxIterations;
+	}
+
 }
@@ -0,0 +1,11 @@
+package com.sjsu.physics.core;
+
+/*
+ * Told whenever a step rate limiter degrades or restores a world,
+ * limiter.level() and its getters tell what is currently cut back.
+ * Called on the world's driver thread.
+ */
+public interface DegradeListener
+{
+	void degradeChanged(World world, StepRateLimiter limiter);
+}
@@ -0,0 +1,11 @@
+package com.sjsu.physics.core;
+
+/*
+ * Receives the summary of every grid point as soon as all of its seeds have run.
+ * Calls come from the runner's worker threads, but never two at once.
+ * An exception thrown here does not stop the ensemble, run() rethrows the first one at the end.
+ */
+public interface EnsembleListener
+{
+	void pointFinished(EnsemblePoint point);
+}
@@ -0,0 +1,208 @@
+package com.sjsu.physics.core;
+
+/** Summary of every seed run at one point of the parameter grid: how many runs there were,
+ * how they ended, and the mean and spread of what they measured. Handed to the listener once
+ * the last seed of the point is done. The statistics only cover runs that did not fail */
+public class EnsemblePoint
+{
+	private ParameterGrid grid;
+	private int point;
+	private int numSeeds;
+	
+	private int runs;
+	private int stopped;
+	private int failed;
+	private RuntimeException firstFailure;
+	
+	private Spread steps;
+	private Spread time;
+	private Spread kineticEnergy;
+	private Spread bodyCount;
+	private Spread wallNanos;
+	
+	protected EnsemblePoint(ParameterGrid g, int p, int seeds)
+	{
+		grid = g;
+		point = p;
+		numSeeds = seeds;
+		steps = new Spread();
+		time = new Spread();
+		kineticEnergy = new Spread();
+		bodyCount = new Spread();
+		wallNanos = new Spread();
+	}
+	
+	/** Called by the runner as each seed finishes. Returns true once every seed of the point is in */
+	protected boolean add(EnsembleRun r)
+	{
+		runs++;
+		if (r.failure() != null)
+		{
+			failed++;
+			if (firstFailure == null)
+				firstFailure = r.failure();
+		}
+		else
+		{
+			if (r.stoppedByCondition())
+				stopped++;
+			steps.add(r.steps());
+			time.add(r.time());
+			kineticEnergy.add(r.kineticEnergy());
+			bodyCount.add(r.bodyCount());
+			wallNanos.add(r.wallNanos());
+		}
+		
+		return runs == numSeeds;
+	}
+	
+	/** Value of the named parameter at this grid point, or def if the grid does not sweep it */
+	public float parameter(String name, float def)
+	{
+		int p = grid.indexOf(name);
+		if (p < 0)
+			return def;
+		return grid.value(point, p);
+	}
+	
+	/** Index of this point in the parameter grid */
+	public int point()
+	{
+		return point;
+	}
+	
+	public ParameterGrid grid()
+	{
+		return grid;
+	}
+	
+	/** Number of seeds run at this point */
+	public int runs()
+	{
+		return runs;
+	}
+	
+	/** Runs the stop condition ended, the rest ran out of steps or failed */
+	public int stoppedByCondition()
+	{
+		return stopped;
+	}
+	
+	/** Runs that ended with an exception */
+	public int failed()
+	{
+		return failed;
+	}
+	
+	/** The exception that ended the first failed run, or null */
+	public RuntimeException firstFailure()
+	{
+		return firstFailure;
+	}
+	
+	/** Steps taken per run */
+	public Spread steps()
+	{
+		return steps;
+	}
+	
+	/** Simulated seconds per run */
+	public Spread time()
+	{
+		return time;
+	}
+	
+	/** Kinetic energy of the world when each run ended */
+	public Spread kineticEnergy()
+	{
+		return kineticEnergy;
+	}
+	
+	/** Bodies left in the world when each run ended */
+	public Spread bodyCount()
+	{
+		return bodyCount;
+	}
+	
+	/** Real time each run took, in nanoseconds */
+	public Spread wallNanos()
+	{
+		return wallNanos;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("point: " + point);
+		for (int i = 0; i < grid.numParameters(); i++)
+			s.append("  ").append(grid.name(i)).append(": ").append(grid.value(point, i));
+		
+		s.append("  runs: ").append(runs).append("  stopped: ").append(stopped)
+				.append("  steps: ").append(steps).append("  time: ").append(time)
+				.append("  energy: ").append(kineticEnergy).append("  bodies: ").append(bodyCount);
+		if (failed > 0)
+			s.append("  failed: ").append(failed).append("  first failure: ").append(firstFailure);
+		return s.toString();
+	}
+	
+	/** Mean, standard deviation and range of one measurement over the runs of a point */
+	public static class Spread
+	{
+		private int count;
+		private double mean;
+		private double sumSquares;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		
+		/** Welford's update, stays accurate where a plain sum of squares would cancel out */
+		private void add(double x)
+		{
+			count++;
+			double delta = x - mean;
+			mean += delta / count;
+			sumSquares += delta * (x - mean);
+			min = Math.min(min, x);
+			max = Math.max(max, x);
+		}
+		
+		/** Number of values, the runs of the point that did not fail */
+		public int count()
+		{
+			return count;
+		}
+		
+		/** Mean of the values, NaN if there are none */
+		public double mean()
+		{
+			return count == 0 ? Double.NaN : mean;
+		}
+		
+		/** Sample standard deviation of the values, 0 for a single value and NaN if there are none */
+		public double stdDev()
+		{
+			if (count == 0)
+				return Double.NaN;
+			if (count == 1)
+				return 0;
+			return Math.sqrt(sumSquares / (count - 1));
+		}
+		
+		/** Smallest value, NaN if there are none */
+		public double min()
+		{
+			return count == 0 ? Double.NaN : min;
+		}
+		
+		/** Largest value, NaN if there are none */
+		public double max()
+		{
+			return count == 0 ? Double.NaN : max;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return (float) mean() + " +- " + (float) stdDev();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.sjsu.physics.core;
+
+import java.util.Random;
+
+/** One run of an ensemble: a seed and a point of the parameter grid, and once the run
+ * is over, a summary of how it went. Handed to the scene factory, the stop condition
+ * and finally the listener */
+public class EnsembleRun
+{
+	private ParameterGrid grid;
+	private int point;
+	private long seed;
+	private Random random;
+	
+	private int steps;
+	private float time;
+	private boolean stopped;
+	private float kineticEnergy;
+	private int bodyCount;
+	private long wallNanos;
+	private RuntimeException failure;
+	
+	protected EnsembleRun(ParameterGrid g, int p, long s)
+	{
+		grid = g;
+		point = p;
+		seed = s;
+		random = new Random(s);
+	}
+	
+	/** Called by the runner after every step */
+	protected void stepped(float dt)
+	{
+		steps++;
+		time += dt;
+	}
+	
+	/** Called by the runner once the run is over */
+	protected void finish(World world, boolean stoppedByCondition, long nanos, RuntimeException e)
+	{
+		stopped = stoppedByCondition;
+		wallNanos = nanos;
+		failure = e;
+		kineticEnergy = world.kineticEnergy();
+		bodyCount = world.bodyCount();
+	}
+	
+	/** Value of the named parameter at this run's grid point, or def if the grid does not sweep it */
+	public float parameter(String name, float def)
+	{
+		int p = grid.indexOf(name);
+		if (p < 0)
+			return def;
+		return grid.value(point, p);
+	}
+	
+	/** Random numbers for the scene, seeded with this run's seed */
+	public Random random()
+	{
+		return random;
+	}
+	
+	public long seed()
+	{
+		return seed;
+	}
+	
+	/** Index of this run's point in the parameter grid */
+	public int point()
+	{
+		return point;
+	}
+	
+	public ParameterGrid grid()
+	{
+		return grid;
+	}
+	
+	/** Steps taken so far */
+	public int steps()
+	{
+		return steps;
+	}
+	
+	/** Simulated seconds so far */
+	public float time()
+	{
+		return time;
+	}
+	
+	/** True if the stop condition ended the run, false if it ran out of steps (or failed) */
+	public boolean stoppedByCondition()
+	{
+		return stopped;
+	}
+	
+	/** Kinetic energy of the world when the run ended */
+	public float kineticEnergy()
+	{
+		return kineticEnergy;
+	}
+	
+	/** Bodies left in the world when the run ended */
+	public int bodyCount()
+	{
+		return bodyCount;
+	}
+	
+	/** Real time the run took, in nanoseconds */
+	public long wallNanos()
+	{
+		return wallNanos;
+	}
+	
+	/** The exception that ended the run, or null */
+	public RuntimeException failure()
+	{
+		return failure;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("seed: " + seed);
+		for (int i = 0; i < grid.numParameters(); i++)
+			s.append("  ").append(grid.name(i)).append(": ").append(grid.value(point, i));
+		
+		s.append("  steps: ").append(steps).append("  time: ").append(time)
+				.append("  stopped: ").append(stopped).append("  energy: ").append(kineticEnergy)
+				.append("  bodies: ").append(bodyCount);
+		if (failure != null)
+			s.append("  failure: ").append(failure);
+		return s.toString();
+	}
+}
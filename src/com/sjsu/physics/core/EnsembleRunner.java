@@ -0,0 +1,233 @@
+package com.sjsu.physics.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sjsu.physics.utils.Globals;
+
+/** Runs a scene headless for every point of a parameter grid and every seed in a range,
+ * in parallel across cores, and streams a summary of each grid point, over all of its seeds, to a listener.
+ * 
+ * Every run gets its own single threaded world, stepped on one worker from start to finish,
+ * so a run only depends on its seed and parameters and can be repeated exactly.
+ * Workers take the next run as soon as they finish one, runs are never queued up front.
+ */
+public class EnsembleRunner
+{
+	private SceneFactory scene;
+	private ParameterGrid grid;
+	private long firstSeed;
+	private int numSeeds;
+	
+	private StopCondition stopCondition;
+	private EnsembleListener listener;
+	private float timeStep;
+	private int substeps;
+	private int maxSteps;
+	private int numWorkers;
+	
+	private AtomicInteger nextRun;
+	private EnsemblePoint[] points;
+	private AtomicReference<RuntimeException> listenerFailure;
+	
+	/** Runs the scene for seeds firstSeed .. firstSeed + numSeeds - 1 at every point of the grid */
+	public EnsembleRunner(SceneFactory s, ParameterGrid g, long firstSeed, int numSeeds)
+	{
+		if (numSeeds < 1)
+			throw new IllegalArgumentException("Need at least one seed, got " + numSeeds);
+		
+		scene = s;
+		grid = g;
+		this.firstSeed = firstSeed;
+		this.numSeeds = numSeeds;
+		timeStep = Globals.DEFAULT_TIME_STEP;
+		substeps = 1;
+		maxSteps = 10000;
+		numWorkers = Runtime.getRuntime().availableProcessors();
+		nextRun = new AtomicInteger();
+		listenerFailure = new AtomicReference<RuntimeException>();
+	}
+	
+	/** Total number of runs, grid points times seeds */
+	public int numRuns()
+	{
+		return grid.size() * numSeeds;
+	}
+	
+	/** Run every run and return once all of them are done. Point summaries stream to the listener meanwhile.
+	 * If the listener threw, the first exception it threw is rethrown here once the runs are done.
+	 * If the calling thread is interrupted, runs in progress are cancelled and no more are started */
+	public void run()
+	{
+		nextRun.set(0);
+		listenerFailure.set(null);
+		points = new EnsemblePoint[grid.size()];
+		for (int i = 0; i < points.length; i++)
+			points[i] = new EnsemblePoint(grid, i, numSeeds);
+		
+		int n = Math.min(numWorkers, numRuns());
+		ExecutorService workers = Executors.newFixedThreadPool(n, new ThreadFactory()
+		{
+			private AtomicInteger count = new AtomicInteger();
+			
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "ensemble-" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(n);
+		for (int i = 0; i < n; i++)
+		{
+			futures.add(workers.submit(new Runnable()
+			{
+				public void run()
+				{
+					int r;
+					while (!Thread.currentThread().isInterrupted() && (r = nextRun.getAndIncrement()) < numRuns())
+						runOne(r);
+				}
+			}));
+		}
+		workers.shutdown();
+		
+		try
+		{
+			for (int i = 0; i < futures.size(); i++)
+				futures.get(i).get();
+		}
+		catch (InterruptedException e)
+		{
+			// stop handing out runs and interrupt the ones in progress
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			cancel(futures);
+			throw new RuntimeException("Ensemble worker failed", e.getCause());
+		}
+		
+		RuntimeException failure = listenerFailure.get();
+		if (failure != null)
+			throw new RuntimeException("Ensemble listener failed", failure);
+	}
+	
+	private void cancel(ArrayList<Future<?>> futures)
+	{
+		nextRun.set(numRuns());
+		for (int i = 0; i < futures.size(); i++)
+			futures.get(i).cancel(true);
+	}
+	
+	/** Build, step and summarize run r */
+	private void runOne(int r)
+	{
+		EnsembleRun run = new EnsembleRun(grid, r / numSeeds, firstSeed + r % numSeeds);
+		World world = new World(1, null);
+		boolean stopped = false;
+		RuntimeException failure = null;
+		long start = System.nanoTime();
+		
+		try
+		{
+			world.setRestitution(run.parameter(ParameterGrid.RESTITUTION, Globals.DEFAULT_RESTITUTION));
+			world.setSolverIterations((int) run.parameter(ParameterGrid.SOLVER_ITERATIONS, Globals.CONTACT_SOLVER_DEFAULT_ITERATIONS));
+			scene.build(world, run);
+			
+			// damping is per body, so it is applied to whatever the scene built. A kind of damping
+			// the grid does not sweep is left as the scene set it
+			if (grid.indexOf(ParameterGrid.DAMPING) >= 0)
+				world.setDamping(run.parameter(ParameterGrid.DAMPING, 1));
+			if (grid.indexOf(ParameterGrid.ANGULAR_DAMPING) >= 0)
+				world.setAngularDamping(run.parameter(ParameterGrid.ANGULAR_DAMPING, 1));
+			
+			while (run.steps() < maxSteps)
+			{
+				if (Thread.currentThread().isInterrupted())
+					return;
+				
+				world.step(timeStep, substeps);
+				run.stepped(timeStep);
+				
+				if (stopCondition != null && stopCondition.shouldStop(world, run))
+				{
+					stopped = true;
+					break;
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			failure = e;
+		}
+		
+		run.finish(world, stopped, System.nanoTime() - start, failure);
+		
+		EnsemblePoint point = points[run.point()];
+		boolean complete;
+		synchronized (point)
+		{
+			complete = point.add(run);
+		}
+		
+		if (complete && listener != null)
+		{
+			synchronized (listener)
+			{
+				try
+				{
+					listener.pointFinished(point);
+				}
+				catch (RuntimeException e)
+				{
+					// keep going, run() reports it once the other runs are done
+					listenerFailure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+	
+	/** Checked after every step. Without one every run goes to maxSteps */
+	public void setStopCondition(StopCondition c)
+	{
+		stopCondition = c;
+	}
+	
+	public void setListener(EnsembleListener l)
+	{
+		listener = l;
+	}
+	
+	/** Seconds per step and substeps per step, DEFAULT_TIME_STEP and 1 by default */
+	public void setTimeStep(float dt, int n)
+	{
+		if (n < 1)
+			throw new IllegalArgumentException("Need at least one substep, got " + n);
+		timeStep = dt;
+		substeps = n;
+	}
+	
+	/** Longest a run may go in steps, whatever the stop condition says */
+	public void setMaxSteps(int n)
+	{
+		maxSteps = n;
+	}
+	
+	/** Number of runs in parallel, the number of cores by default */
+	public void setNumWorkers(int n)
+	{
+		if (n < 1)
+			throw new IllegalArgumentException("Need at least one worker, got " + n);
+		numWorkers = n;
+	}
+}
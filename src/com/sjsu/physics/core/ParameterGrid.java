@@ -0,0 +1,71 @@
+package com.sjsu.physics.core;
+
+import java.util.ArrayList;
+
+/** A grid of named parameter values to sweep. Every combination of values is one point of the grid,
+ * so the number of points is the product of the number of values of each parameter.
+ * EnsembleRunner applies the parameters named below itself, any other name is just handed to the scene */
+public class ParameterGrid
+{
+	public static final String RESTITUTION = "restitution";
+	public static final String DAMPING = "damping";
+	public static final String ANGULAR_DAMPING = "angularDamping";
+	public static final String SOLVER_ITERATIONS = "solverIterations";
+	
+	private ArrayList<String> names;
+	private ArrayList<float[]> values;
+	
+	public ParameterGrid()
+	{
+		names = new ArrayList<String>();
+		values = new ArrayList<float[]>();
+	}
+	
+	/** Add a parameter and the values to try for it. Returns this grid for chaining */
+	public ParameterGrid add(String name, float... v)
+	{
+		if (v.length == 0)
+			throw new IllegalArgumentException("Parameter " + name + " needs at least one value");
+		if (names.contains(name))
+			throw new IllegalArgumentException("Parameter " + name + " is already in the grid");
+		
+		names.add(name);
+		values.add(v.clone());
+		return this;
+	}
+	
+	/** Number of points in the grid. An empty grid has one point with no parameters */
+	public int size()
+	{
+		int size = 1;
+		for (int i = 0; i < values.size(); i++)
+			size *= values.get(i).length;
+		return size;
+	}
+	
+	public int numParameters()
+	{
+		return names.size();
+	}
+	
+	public String name(int parameter)
+	{
+		return names.get(parameter);
+	}
+	
+	/** Index of the named parameter, or -1 if it is not in the grid */
+	public int indexOf(String name)
+	{
+		return names.indexOf(name);
+	}
+	
+	/** Value of a parameter at a point. The first parameter varies fastest */
+	public float value(int point, int parameter)
+	{
+		for (int i = 0; i < parameter; i++)
+			point /= values.get(i).length;
+		
+		float[] v = values.get(parameter);
+		return v[point % v.length];
+	}
+}
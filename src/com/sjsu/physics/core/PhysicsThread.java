@@ -1,214 +1,964 @@
 package com.sjsu.physics.core;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.sjsu.physics.collisiondetection.BodyVisitor;
 import com.sjsu.physics.collisiondetection.FineCollision;
 import com.sjsu.physics.collisiondetection.QuadTreeNode;
+import com.sjsu.physics.collisiondetection.TimeOfImpact;
+import com.sjsu.physics.shapes.BoundingBox;
 import com.sjsu.physics.shapes.RigidBody;
 import com.sjsu.physics.utils.Globals;
 import com.sjsu.physics.utils.Vector2;
 
-/** A single thread to perform core physics routines in parallel */
-public class PhysicsThread extends Thread
+/** One partition of a world, performs the core physics routines for its area.
+ * Its step phases are run in parallel with the other partitions on the world's executor */
+public class PhysicsThread
 {
-        private int pNum;
-        
-        private QuadTreeNode myTreeRoot;
-        private ArrayList<RigidBody> myBodies;
-        private LinkedList<RigidBody> newBodies;
-        public ArrayList<Contact> contacts;
-        
-        private ContactSolver contactSolver;
-        
-        private World myWorld;
-        private boolean isProcessing;
-        
-        public PhysicsThread(World w, int p, QuadTreeNode root)
-        {
-                isProcessing = false;
-                myWorld = w;
-                pNum = p;
-                myTreeRoot = root;
-                myBodies = new ArrayList<RigidBody>(Globals.DEFAULT_BODY_SIZE);
-                newBodies = new LinkedList<RigidBody>();
-                contacts = new ArrayList<Contact>(Globals.DEFAULT_BODY_SIZE / 2);
-                
-                contactSolver = new ContactSolver(Globals.CONTACT_SOLVER_DEFAULT_ITERATIONS);
-        }
+	private int pNum;
+	
+	private QuadTreeNode myTreeRoot;
+	private ArrayList<RigidBody> myBodies;
+	
+	// Bodies handed to us by other threads (or the world), drained at our step boundary.
+	// Any thread may offer, only this thread polls, the queue itself is lock-free
+	private ConcurrentLinkedQueue<RigidBody> inbound;
+	
+	// Bodies that left our bounds this step, handed off to their new thread at the step boundary
+	private ArrayList<RigidBody> outbound;
+	
+	// Read-only copies of our border bodies, republished every step. Two arrays are filled in turn
+	// so the one other threads may still be reading is never written
+	private volatile RigidBody[] ghosts;
+	private volatile int ghostCount;
+	private RigidBody[][] ghostBuffers;
+	private ArrayList<RigidBody> borderBodies;
+	
+	// Set when a body we published left us or was removed, a thread sitting out its step republishes
+	private boolean ghostsStale;
+	
+	// Our region grown to take in our border bodies, as of our last publish
+	private float reachMinX, reachMinY, reachMaxX, reachMaxY;
+	
+	// Changes we worked out this step for other threads' border bodies. Each owner picks out its
+	// own in the hand off phase, the corrections are reused every step
+	private ArrayList<BorderCorrection> outgoing;
+	private int outgoingCount;
+	
+	private ContactBuffer contacts;
+	
+	private ContactSolver contactSolver;
+	
+	// Also make contacts for pairs that could touch within the next step, see FineCollision
+	private boolean speculative;
+	private SpeculativePairs speculativePairs;
+	
+	// Sensor overlaps and touching contacts found this step, for SensorTracker and ContactEventTracker.
+	// Kept from an earlier step while we sit out our contact phases, nothing moved here so they still hold
+	private long[] sensorPairs;
+	private int sensorPairCount;
+	private long[] contactKeys;
+	private float[] contactData;
+	private int contactRecordCount;
+	private boolean pairRecordsStale;
+	
+	// Set when a body was removed or moved between steps, so our tree no longer matches myBodies
+	private boolean treeStale;
+	
+	// Our bullets as of our last tree rebuild, and the ones the sweep found will hit something
+	// this step with the fraction of the step they may move
+	private int bulletCount;
+	private TimeOfImpact timeOfImpact;
+	private ArrayList<RigidBody> sweptBullets;
+	private float[] sweptFractions;
+	
+	// Bullets we stopped at their time of impact, they still have part of the substep to move,
+	// and whether we are in a sub-step that moves just those
+	private int bulletsWithTimeLeft;
+	private boolean subStep;
+	
+	private World myWorld;
+	private volatile boolean isProcessing;
+	
+	// Bodies that moved (or arrived) during our last step, none means we have nothing to do
+	private volatile int activeBodies;
+	
+	// Under overload an idle thread may sit out the integrate and contact phases
+	private volatile boolean skipIfIdle;
+	private boolean skippingStep;
+	
+	public PhysicsThread(World w, int p, QuadTreeNode root)
+	{
+		isProcessing = false;
+		myWorld = w;
+		pNum = p;
+		myTreeRoot = root;
+		reachMinX = root.bounds().x;
+		reachMinY = root.bounds().y;
+		reachMaxX = root.bounds().x + root.bounds().width;
+		reachMaxY = root.bounds().y + root.bounds().height;
+		myBodies = new ArrayList<RigidBody>(Globals.DEFAULT_BODY_SIZE);
+		inbound = new ConcurrentLinkedQueue<RigidBody>();
+		outbound = new ArrayList<RigidBody>(Globals.DEFAULT_BODY_SIZE / 10);
+		ghostBuffers = new RigidBody[2][Globals.DEFAULT_BODY_SIZE / 10];
+		ghosts = ghostBuffers[0];
+		borderBodies = new ArrayList<RigidBody>(Globals.DEFAULT_BODY_SIZE / 10);
+		outgoing = new ArrayList<BorderCorrection>();
+		contacts = new ContactBuffer(Globals.DEFAULT_BODY_SIZE / 2);
+		
+		contactSolver = new ContactSolver(Globals.CONTACT_SOLVER_DEFAULT_ITERATIONS);
+		
+		sweptBullets = new ArrayList<RigidBody>();
+		sweptFractions = new float[8];
+		speculativePairs = new SpeculativePairs();
+		sensorPairs = new long[16];
+		contactKeys = new long[16];
+		contactData = new float[16 * ContactEventBuffer.STRIDE];
+	}
 
-        public void run()
-        {
-                long timeStep = 0;
-                
-                // While loop to do all necessary tasks, once run returns the thread will die
-                while (true)
-                {                        
-                        // Get the time that has passed
-                        long startTime = System.nanoTime();
-                        
-                        // We need to remove all bodies from our tree and reinsert
-                        // This ensures bodies that have moved are in correct places in tree
-                        // Reinsert is much easier than updating on the fly and doesn't add too much time
-                        clearTree();
-                        insertBodiesToTree();
-                        
-                        // Take a step forward in time
-                        integrate(timeStep * Globals.NANOSEC_TO_SECONDS * 5);
-                        
-                        // Generate contacts / check for collisions
-                        generateContacts();
-                        
-                        // Resolve contacts
-                        resolveContacts(timeStep * Globals.NANOSEC_TO_SECONDS * 5);
-                        
-                        // Transfer all newly added bodies to our body list
-                        refreshBodyList();
-                        
-                        // workaround to ensure that we are always moving forward (in case of large # bodies), but never
-                        // moving forward too fast (in the case of small # bodies)
-                        timeStep = (System.nanoTime() - startTime);
-                }
-        }
-        
-        /** Integrate all of the bodies that belong to this processor forward by time t. */
-        private void integrate(float dt)
-        {
-                for (int i = 0; i < myBodies.size(); i++)
-                {
-                        myBodies.get(i).update(dt);
-                        
-                        // After we update the body we need to make sure its still in this processor's bounds
-                        // If its not we remove it from this processor and reinsert into the main world
-                        Vector2 center = myBodies.get(i).center();
-                        if (!myTreeRoot.bounds().contains(center.x(), center.y()))
-                        {
-                                RigidBody body = myBodies.get(i);
-                                myBodies.remove(i);
-                                myWorld.addBodyToWorld(body);
-                        }
-                }
-        }
-        
-        /** Check for collisions and generate contacts if there is a collision */
-        private void generateContacts()
-        {
-                ArrayList<RigidBody> possibleCollisions;
-                
-                // First check for collisions against all our own bodies
-                for (int i = 0; i < myBodies.size(); i++)
-                {
-                        // TODO this is probably not the best way.. this will call retrieve a lot of times
-                        // I should be able to optimize this to call retrieve, check all bodies that it retrieves
-                        // then move on to the next node. This way every node is only retrieved once
-                        possibleCollisions = myTreeRoot.retrieveNode(myBodies.get(i));
-                        if (possibleCollisions.size() < 1)
-                                continue;
-                        
-                        for (int x = 0; x < possibleCollisions.size(); x++)
-                        {
-                                // Make sure we aren't checking a body against itself obviously redundant
-                                if (possibleCollisions.get(x).equals(myBodies.get(i)))
-                                        continue;
-                                
-                                // Check for collision. If there is no collision contact will be null
-                                // if we get a contact add it to the list to be resolved later
-                                FineCollision.getContactPoints(myBodies.get(i), possibleCollisions.get(x), contacts);
-                        }
-                }
-                
-                
-                /* Next we need to check against any bodies that are residing in the world tree node, parent
-                 * to this physics root node. Bodies will be in this if they are overlapping two physics boundaries
-                 * TODO bug seems to be present here, sometimes not catching overlapping bodies*/
-                possibleCollisions = myWorld.overlappingBodies();
-                if (possibleCollisions.size() < 1)
-                        return;
-                
-                for (int i = 0; i < possibleCollisions.size(); i++)
-                {
-                        for (int x = 0; x < myBodies.size(); x++)
-                        {
-                                // Make sure we aren't checking a body against itself obviously redundant
-                                if (possibleCollisions.get(i).equals(myBodies.get(x)))
-                                        continue;
-                                
-                                FineCollision.getContactPoints(myBodies.get(x), possibleCollisions.get(i), contacts);
-                        }
-                }
-        }
-        
-        /** Resolve any contacts in our list. To be called after generateContacts */
-        private void resolveContacts(float dt)
-        {
-                if (contacts.size() > 0)
-                        contactSolver.resolveContacts(contacts, dt);
-        }
-        
-        /** Called by world. Inserts a rigid body into a waiting list, will be added to
-         * the full list at the end of the loop */
-        protected void insertBody(RigidBody b)
-        {
-//                System.out.println("Body added to process: " + pNum);
-                newBodies.add(b);
-        }
-        
-        /** Place newly added bodies into the arrayList */
-        private void refreshBodyList()
-        {
-                while (newBodies.size() > 0)
-                {
-                        RigidBody b = newBodies.removeFirst();
-                        myBodies.add(b);
-                }
-        }
-        
-        /** Insert all of myBodies into the processor's tree.. should happen every loop after clear */
-        private void insertBodiesToTree()
-        {
-                for (int i = 0; i < myBodies.size(); i++)
-                {
-                        myTreeRoot.insert(myBodies.get(i));
-                }
-        }
-        
-        protected void removeBody(RigidBody b)
-        {
-                myBodies.remove(b);
-        }
-        
-        /** Clear all bodies from the tree.. called by world and should happen every loop */
-        private void clearTree()
-        {
-                myTreeRoot.clearObjects();
-        }
-        
-        /** Clear all bodies from this processor */
-        private void clearBodies()
-        {
-                myBodies.clear();
-        }
-        
-        /** Return all bodies that belong to this thread */
-        public ArrayList<RigidBody> bodies()
-        {
-                return myBodies;
-        }
-        
-        public QuadTreeNode treeRoot()
-        {
-                return myTreeRoot;
-        }
-        
-        public boolean isProcessing()
-        {
-                return isProcessing;
-        }
-        
-        public QuadTreeNode quadTree()
-        {
-                return myTreeRoot;
-        }
+	/* A step is split into four phases. World.step runs each phase on every thread in parallel
+	 * and waits for all threads to finish a phase before starting the next, so ghosts and
+	 * handoffs are always complete when the next phase reads them. When any thread has bullets
+	 * they are swept for their time of impact first, in a phase of its own. Bullets stopped at
+	 * their time of impact move on by the rest of their time in sub-steps of their own, a sweep
+	 * and integration of just those bullets followed by the usual contact, hand off and refresh phases */
+	
+	/** Called by world between steps: bring our tree up to date if bodies were removed or moved */
+	protected void prepareStep()
+	{
+		if (treeStale)
+			rebuildTree();
+		
+		pairRecordsStale = true;
+	}
+	
+	/** Phase 0: find how far each of our bullets can move before it hits something. Every tree
+	 * is read only during this phase, bullets are swept against all of them */
+	protected void stepSweep(float dt)
+	{
+		sweepBullets(dt, false);
+	}
+	
+	/** Sub-step phase 0: sweep the bullets that still have time left for the rest of it */
+	protected void stepSweepRest()
+	{
+		sweepBullets(0, true);
+	}
+	
+	/** Sweep our bullets over dt, or over the time they have left */
+	private void sweepBullets(float dt, boolean rest)
+	{
+		sweptBullets.clear();
+		if (bulletCount == 0)
+			return;
+		
+		if (timeOfImpact == null)
+			timeOfImpact = new TimeOfImpact(myWorld.treeRoots());
+		
+		for (int i = 0; i < myBodies.size(); i++)
+		{
+			RigidBody b = myBodies.get(i);
+			if (!b.isBullet())
+				continue;
+			
+			// time a sub-step could not use is dropped with the substep
+			float time = rest ? b.sweepTimeLeft() : dt;
+			if (!rest)
+				b.setSweepTimeLeft(0);
+			if (time <= 0 || !b.isAwake() || b.hasInfiniteMass())
+				continue;
+			
+			float fraction = timeOfImpact.sweep(b, time);
+			if (fraction < 1)
+			{
+				if (sweptBullets.size() == sweptFractions.length)
+				{
+					float[] grown = new float[sweptFractions.length * 2];
+					System.arraycopy(sweptFractions, 0, grown, 0, sweptFractions.length);
+					sweptFractions = grown;
+				}
+				sweptFractions[sweptBullets.size()] = fraction;
+				sweptBullets.add(b);
+			}
+		}
+	}
+	
+	/** Phase 1: integrate our bodies by dt and publish our border bodies */
+	protected void stepIntegrate(float dt)
+	{
+		isProcessing = true;
+		
+		// the owners applied last step's corrections in their hand off phase
+		outgoingCount = 0;
+		
+		// nothing moved here last step and nothing arrived, so nothing can move now
+		bulletsWithTimeLeft = 0;
+		subStep = false;
+		skippingStep = skipIfIdle && isIdle();
+		if (skippingStep)
+		{
+			// nothing moved, but other threads must not see bodies we no longer own
+			if (ghostsStale)
+				publishGhosts(dt);
+			return;
+		}
+		
+		// Take a step forward in time
+		integrate(dt);
+		
+		// Let other threads see our border bodies
+		publishGhosts(dt);
+	}
+	
+	/** Sub-step phase 1: move the bullets stopped at their time of impact by the rest of their time,
+	 * as far as the sweep allows. The contacts they stopped at have been resolved since */
+	protected void stepIntegrateRest(float dt)
+	{
+		isProcessing = true;
+		outgoingCount = 0;
+		bulletsWithTimeLeft = 0;
+		subStep = true;
+		
+		boolean moved = false;
+		int i = 0;
+		while (i < myBodies.size())
+		{
+			RigidBody body = myBodies.get(i);
+			body.setSubStepped(false);
+			if (!body.isBullet() || body.sweepTimeLeft() <= 0)
+			{
+				i++;
+				continue;
+			}
+			
+			integrateBullet(body, body.sweepTimeLeft());
+			body.setSubStepped(true);
+			moved = true;
+			
+			// may leave us just like in integrate
+			Vector2 center = body.center();
+			if (!myTreeRoot.bounds().contains(center.x(), center.y()))
+			{
+				removeAt(i);
+				outbound.add(body);
+			}
+			else
+				i++;
+		}
+		
+		// only our moved bullets can make new contacts here, unless one of another thread reaches in
+		skippingStep = !moved;
+		
+		// other threads must see where it went, and not see bodies we handed off since
+		if (moved || ghostsStale)
+			publishGhosts(dt);
+	}
+	
+	/** Phase 2: generate and resolve contacts, sending ghost changes to their owners */
+	protected void stepContacts(float dt)
+	{
+		// a moving body of another thread may still run into our resting ones, and pairs
+		// of two border bodies may be ours to take
+		if (skippingStep && !activeGhostInReach(dt))
+			return;
+		
+		// sensor overlaps and contacts add up over the substeps of a step
+		if (pairRecordsStale)
+		{
+			sensorPairCount = 0;
+			contactRecordCount = 0;
+			pairRecordsStale = false;
+		}
+		
+		generateContacts(dt);
+		
+		// the contacts may set our resting bodies moving, so we must not sit out our next step
+		if (skippingStep && contacts.size() > 0)
+			activeBodies++;
+		
+		resolveContacts(dt);
+	}
+	
+	/** Phase 3: apply the changes other threads worked out for our bodies and give away bodies that left us */
+	protected void stepHandOff()
+	{
+		applyCorrections();
+		handOffMigrants();
+	}
+	
+	/** Phase 4: take in bodies handed to us and rebuild our tree */
+	protected void stepRefresh()
+	{
+		refreshBodyList();
+		
+		// Done last so contacts next step and queries between steps see where the bodies ended up
+		if (!skippingStep || activeBodies > 0 || treeStale)
+			rebuildTree();
+		
+		isProcessing = false;
+	}
+	
+	/** Integrate all of the bodies that belong to this processor forward by time t. */
+	private void integrate(float dt)
+	{
+		int active = 0;
+		int i = 0;
+		while (i < myBodies.size())
+		{
+			RigidBody body = myBodies.get(i);
+			
+			// sleeping bodies stay put while we are cutting back
+			if (skipIfIdle && !body.isAwake())
+			{
+				i++;
+				continue;
+			}
+			
+			// a bullet about to hit something only moves up to its time of impact
+			if (body.isBullet())
+				integrateBullet(body, dt);
+			else
+				body.update(dt);
+			if (isActive(body))
+				active++;
+			
+			// After we update the body we need to make sure its still in this processor's bounds
+			// If its not we stop integrating it, we still own it (and resolve its contacts)
+			// until the step boundary where it is handed to its new thread.
+			// The swap-remove moves an un-integrated body into slot i, so don't advance i
+			Vector2 center = body.center();
+			if (!myTreeRoot.bounds().contains(center.x(), center.y()))
+			{
+				removeAt(i);
+				outbound.add(body);
+			}
+			else
+				i++;
+		}
+		
+		activeBodies = active;
+	}
+	
+	/** Move bullet b by as much of time as the sweep allows, what is left it moves in a sub-step */
+	private void integrateBullet(RigidBody b, float time)
+	{
+		float fraction = sweptBullets.size() > 0 ? sweptFraction(b) : 1;
+		b.update(time * fraction);
+		b.setSweepTimeLeft(time * (1 - fraction));
+		if (fraction < 1)
+			bulletsWithTimeLeft++;
+	}
+	
+	/** Fraction of the step the sweep allows bullet b to move */
+	private float sweptFraction(RigidBody b)
+	{
+		for (int i = 0; i < sweptBullets.size(); i++)
+		{
+			if (sweptBullets.get(i) == b)
+				return sweptFractions[i];
+		}
+		return 1;
+	}
+	
+	/** True if an active ghost of another thread reaches into our region or one of our border bodies */
+	private boolean activeGhostInReach(float dt)
+	{
+		for (int t = 0; t < myWorld.numThreads(); t++)
+		{
+			if (t == pNum)
+				continue;
+			
+			RigidBody[] others = myWorld.getThread(t).ghosts();
+			int count = myWorld.getThread(t).ghostCount();
+			for (int g = 0; g < count; g++)
+			{
+				RigidBody ghost = others[g];
+				if (!isActive(ghost))
+					continue;
+				
+				float margin = speculativeMargin(ghost, dt);
+				Vector2 center = ghost.center();
+				BoundingBox box = ghost.bounds();
+				if (box.leftX(center) - margin < reachMaxX && box.rightX(center) + margin > reachMinX
+						&& box.topY(center) - margin < reachMaxY && box.bottomY(center) + margin > reachMinY)
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/** A body is active if it is awake, can be moved and is moving (or accelerating) */
+	private boolean isActive(RigidBody b)
+	{
+		if (!b.isAwake() || b.hasInfiniteMass())
+			return false;
+		
+		return b.velocity().magnitudeSquared() > 0 || b.angularVelocity() != 0
+				|| b.acceleration().magnitudeSquared() > 0;
+	}
+	
+	/** Check for collisions and generate contacts if there is a collision */
+	private void generateContacts(float dt)
+	{
+		// First check for collisions against all our own bodies. Speculative pairs can be further
+		// apart than the bodies of one node, so they are found with a query around each body instead.
+		// A sub-step only makes the contacts of the bullets it moved
+		if (speculative && !subStep)
+			speculativePairs.findAll(dt);
+		else
+		{
+			// bodies leaving us this step are still ours and still in our tree until the hand off,
+			// two of them leaving together must still meet
+			for (int i = 0; i < myBodies.size() + outbound.size(); i++)
+			{
+				RigidBody body = i < myBodies.size() ? myBodies.get(i) : outbound.get(i - myBodies.size());
+				if (!subStep || body.subStepped())
+					nodeContacts(body);
+			}
+		}
+		
+		
+		/* Next check our bodies against the ghosts (read-only copies) of other threads' border bodies.
+		 * Each cross-thread pair is narrowphased by exactly one thread. A body that is not a border
+		 * body lies inside its own region and the other thread cannot see it, so a pair with one is
+		 * taken by that body's thread. A pair of two border bodies is seen by both threads and the
+		 * lower numbered thread takes it, even when the ghost does not reach into its region
+		 * (diagonal neighbours can touch in a third thread's region) */
+		for (int t = 0; t < myWorld.numThreads(); t++)
+		{
+			if (t == pNum)
+				continue;
+			
+			RigidBody[] others = myWorld.getThread(t).ghosts();
+			int count = myWorld.getThread(t).ghostCount();
+			for (int g = 0; g < count; g++)
+			{
+				RigidBody ghost = others[g];
+				float ghostMargin = speculativeMargin(ghost, dt);
+				if (overlapsRegion(ghost, ghostMargin, myTreeRoot.bounds()))
+				{
+					// bodies leaving us this step are still ours until the hand off
+					for (int x = 0; x < myBodies.size() + outbound.size(); x++)
+					{
+						RigidBody body = x < myBodies.size() ? myBodies.get(x) : outbound.get(x - myBodies.size());
+						if (!body.isBorder() || pNum < t)
+							ghostContacts(body, ghost, ghostMargin, dt);
+					}
+				}
+				else if (pNum < t)
+				{
+					// outside our region only our border bodies (outbound ones included) can touch it
+					for (int x = 0; x < borderBodies.size(); x++)
+						ghostContacts(borderBodies.get(x), ghost, ghostMargin, dt);
+				}
+			}
+		}
+	}
+	
+	/** Make the contacts (or sensor overlaps) of one of our bodies with the bodies of its leaf and the nodes above */
+	private void nodeContacts(RigidBody body)
+	{
+		// TODO this is probably not the best way.. this will call retrieve a lot of times
+		// I should be able to optimize this to call retrieve, check all bodies that it retrieves
+		// then move on to the next node. This way every node is only retrieved once
+		// Bodies too big for a leaf live in the nodes above it, so check those too
+		QuadTreeNode node = myTreeRoot.retrieveLeaf(body);
+		while (node != null)
+		{
+			ArrayList<RigidBody> possibleCollisions = node.bodies();
+			for (int x = 0; x < possibleCollisions.size(); x++)
+			{
+				// Make sure we aren't checking a body against itself obviously redundant
+				if (possibleCollisions.get(x).equals(body))
+					continue;
+				
+				// Pairs filtered out never reach the narrowphase
+				if (!body.canCollideWith(possibleCollisions.get(x)))
+					continue;
+				
+				if (body.isSensor() || possibleCollisions.get(x).isSensor())
+				{
+					sensorOverlap(body, possibleCollisions.get(x));
+					continue;
+				}
+			
+				// Check for collision. If there is no collision contact will be null
+				// if we get a contact add it to the list to be resolved later
+				FineCollision.getContactPoints(body, possibleCollisions.get(x), contacts);
+			}
+		
+			node = node == myTreeRoot ? null : node.parent();
+		}
+	}
+	
+	/** Make the contacts (or sensor overlap) between one of our bodies and another thread's ghost */
+	private void ghostContacts(RigidBody body, RigidBody ghost, float ghostMargin, float dt)
+	{
+		if (!body.canCollideWith(ghost))
+			return;
+		
+		// a sub-step only makes the contacts of the bullets it moved
+		if (subStep && !body.subStepped() && !ghost.subStepped())
+			return;
+		if (body.isSensor() || ghost.isSensor())
+		{
+			sensorOverlap(body, ghost);
+			return;
+		}
+		
+		FineCollision.getContactPoints(body, ghost, contacts, ghostMargin + speculativeMargin(body, dt));
+	}
+	
+	/** Keep a resolved contact for the contact events, keyed with the lower handle first */
+	private void recordContact(Contact c)
+	{
+		if (contactRecordCount == contactKeys.length)
+		{
+			contactKeys = Arrays.copyOf(contactKeys, contactRecordCount * 2);
+			contactData = Arrays.copyOf(contactData, contactRecordCount * 2 * ContactEventBuffer.STRIDE);
+		}
+		
+		// the normal points from the lower handle's body to the other
+		boolean flip = c.a().id() > c.b().id();
+		int d = contactRecordCount * ContactEventBuffer.STRIDE;
+		contactKeys[contactRecordCount] = flip ? BodySlotMap.pairKey(c.b().id(), c.a().id())
+				: BodySlotMap.pairKey(c.a().id(), c.b().id());
+		contactData[d] = c.contactPoint().x;
+		contactData[d + 1] = c.contactPoint().y;
+		contactData[d + 2] = flip ? -c.normal().x : c.normal().x;
+		contactData[d + 3] = flip ? -c.normal().y : c.normal().y;
+		contactData[d + 4] = c.impulse();
+		contactRecordCount++;
+	}
+	
+	/** Record a sensor and a body it overlaps, they never get a contact. Sensors do not sense each other */
+	private void sensorOverlap(RigidBody a, RigidBody b)
+	{
+		if (a.isSensor() == b.isSensor() || !FineCollision.overlaps(a, b, contacts))
+			return;
+		
+		if (sensorPairCount == sensorPairs.length)
+			sensorPairs = Arrays.copyOf(sensorPairs, sensorPairCount * 2);
+		
+		if (a.isSensor())
+			sensorPairs[sensorPairCount++] = BodySlotMap.pairKey(a.id(), b.id());
+		else
+			sensorPairs[sensorPairCount++] = BodySlotMap.pairKey(b.id(), a.id());
+	}
+	
+	/** Check if a body's bounding box, grown by margin, reaches into region r */
+	private static boolean overlapsRegion(RigidBody b, float margin, Rectangle r)
+	{
+		Vector2 center = b.center();
+		BoundingBox box = b.bounds();
+		
+		return box.leftX(center) - margin < r.x + r.width && box.rightX(center) + margin > r.x
+				&& box.topY(center) - margin < r.y + r.height && box.bottomY(center) + margin > r.y;
+	}
+	
+	/** How far a body can move in one step of dt when we make speculative contacts, otherwise 0 */
+	private float speculativeMargin(RigidBody b, float dt)
+	{
+		return speculative ? FineCollision.speculativeMargin(b, dt) : 0;
+	}
+	
+	/** Mark which of our bodies poke out of our region and publish ghost copies of them.
+	 * With speculative contacts a body that could poke out within the next step counts too.
+	 * The published array is not written again until the step after next, other threads read it in our
+	 * contact phase */
+	private void publishGhosts(float dt)
+	{
+		Rectangle r = myTreeRoot.bounds();
+		borderBodies.clear();
+		reachMinX = r.x;
+		reachMinY = r.y;
+		reachMaxX = r.x + r.width;
+		reachMaxY = r.y + r.height;
+		
+		for (int i = 0; i < myBodies.size(); i++)
+		{
+			RigidBody body = myBodies.get(i);
+			Vector2 center = body.center();
+			BoundingBox box = body.bounds();
+			float margin = speculativeMargin(body, dt);
+			boolean border = box.leftX(center) - margin < r.x || box.rightX(center) + margin > r.x + r.width
+					|| box.topY(center) - margin < r.y || box.bottomY(center) + margin > r.y + r.height;
+			
+			body.setBorder(border);
+			if (border)
+			{
+				borderBodies.add(body);
+				growReach(body, margin);
+			}
+		}
+		
+		// Bodies that left our region are already in another thread's, let it collide with them too
+		for (int i = 0; i < outbound.size(); i++)
+		{
+			outbound.get(i).setBorder(true);
+			borderBodies.add(outbound.get(i));
+			growReach(outbound.get(i), speculativeMargin(outbound.get(i), dt));
+		}
+		
+		int next = ghosts == ghostBuffers[0] ? 1 : 0;
+		if (ghostBuffers[next].length < borderBodies.size())
+			ghostBuffers[next] = new RigidBody[borderBodies.size() * 2];
+		
+		RigidBody[] published = ghostBuffers[next];
+		for (int i = 0; i < borderBodies.size(); i++)
+			published[i] = borderBodies.get(i).ghostCopy();
+		
+		ghostCount = borderBodies.size();
+		ghosts = published;
+		ghostsStale = false;
+	}
+	
+	/** Grow our reach to take in a border body's bounding box grown by margin */
+	private void growReach(RigidBody b, float margin)
+	{
+		Vector2 center = b.center();
+		BoundingBox box = b.bounds();
+		reachMinX = Math.min(reachMinX, box.leftX(center) - margin);
+		reachMinY = Math.min(reachMinY, box.topY(center) - margin);
+		reachMaxX = Math.max(reachMaxX, box.rightX(center) + margin);
+		reachMaxY = Math.max(reachMaxY, box.bottomY(center) + margin);
+	}
+	
+	/** Apply the changes other threads worked out for our border bodies this step. Every thread's
+	 * corrections are complete and only read in this phase, the bodies are still ours until the hand off */
+	private void applyCorrections()
+	{
+		for (int t = 0; t < myWorld.numThreads(); t++)
+		{
+			if (t == pNum)
+				continue;
+			
+			PhysicsThread other = myWorld.getThread(t);
+			for (int i = 0; i < other.outgoingCount; i++)
+			{
+				BorderCorrection c = other.outgoing.get(i);
+				if (c.owner != pNum)
+					continue;
+				
+				// the body was removed from the world in the meantime
+				if (myWorld.body(c.body.id()) != c.body)
+					continue;
+				
+				c.apply();
+				activeBodies++;
+			}
+		}
+	}
+	
+	/** Take a pooled correction for the ghost of a resolved contact */
+	private void addCorrection(Contact c)
+	{
+		if (outgoingCount == outgoing.size())
+			outgoing.add(new BorderCorrection());
+		
+		outgoing.get(outgoingCount++).set(c);
+	}
+	
+	/** Resolve any contacts in our list. To be called after generateContacts.
+	 * Changes for ghost bodies are sent on to the threads that own them */
+	private void resolveContacts(float dt)
+	{
+		if (contacts.size() > 0)
+			contactSolver.resolveContacts(contacts, dt);
+		
+		for (int i = 0; i < contacts.size(); i++)
+		{
+			Contact c = contacts.get(i);
+			RigidBody ghost = c.ghost();
+			if (ghost != null)
+				addCorrection(c);
+			
+			// speculative contacts are not touching yet
+			if (c.separation() == 0)
+				recordContact(c);
+		}
+		
+		contacts.clear();
+	}
+	
+	/** Called by world from any thread. Queues a rigid body for this thread, it will be
+	 * added to the full list at our next step boundary. The caller must already have set
+	 * the body's process to this thread, ownership passes to us through the queue */
+	protected void insertBody(RigidBody b)
+	{
+		b.setLocalIndex(-1);
+		inbound.offer(b);
+	}
+	
+	/** Place newly added bodies into the arrayList */
+	private void refreshBodyList()
+	{
+		RigidBody b;
+		while ((b = inbound.poll()) != null)
+		{
+			b.setLocalIndex(myBodies.size());
+			myBodies.add(b);
+			
+			// new arrivals have not been integrated by us yet
+			activeBodies++;
+		}
+	}
+	
+	/** Give every body that left our bounds this step to the world, which routes it to its new thread */
+	private void handOffMigrants()
+	{
+		for (int i = 0; i < outbound.size(); i++)
+			myWorld.migrateBody(outbound.get(i));
+		
+		if (outbound.size() > 0)
+			ghostsStale = true;
+		outbound.clear();
+	}
+	
+	/** We need to remove all bodies from our tree and reinsert
+	 * This ensures bodies that have moved are in correct places in tree
+	 * Reinsert is much easier than updating on the fly and doesn't add too much time */
+	private void rebuildTree()
+	{
+		clearTree();
+		insertBodiesToTree();
+		treeStale = false;
+	}
+	
+	/** Insert all of myBodies into the processor's tree.. should happen every loop after clear */
+	private void insertBodiesToTree()
+	{
+		bulletCount = 0;
+		for (int i = 0; i < myBodies.size(); i++)
+		{
+			myTreeRoot.insert(myBodies.get(i));
+			if (myBodies.get(i).isBullet())
+				bulletCount++;
+		}
+	}
+	
+	/** Remove a body from this thread in O(1) using its local index */
+	protected void removeBody(RigidBody b)
+	{
+		int i = b.localIndex();
+		
+		// our published ghosts may still hold it
+		ghostsStale = true;
+		
+		// not in our list, it must be waiting to be added or leaving us this step
+		if (i < 0 || i >= myBodies.size() || myBodies.get(i) != b)
+		{
+			if (!inbound.remove(b))
+				outbound.remove(b);
+			return;
+		}
+		
+		removeAt(i);
+		
+		// our tree still holds it
+		treeStale = true;
+	}
+	
+	/** Swap-remove the body at index i, the last body takes its place */
+	private void removeAt(int i)
+	{
+		int last = myBodies.size() - 1;
+		RigidBody removed = myBodies.get(i);
+		RigidBody moved = myBodies.get(last);
+		
+		myBodies.set(i, moved);
+		moved.setLocalIndex(i);
+		myBodies.remove(last);
+		removed.setLocalIndex(-1);
+	}
+	
+	/** Clear all bodies from the tree.. called by world and should happen every loop */
+	private void clearTree()
+	{
+		myTreeRoot.clearObjects();
+	}
+	
+	/** Clear all bodies from this processor */
+	private void clearBodies()
+	{
+		for (int i = 0; i < myBodies.size(); i++)
+			myBodies.get(i).setLocalIndex(-1);
+		myBodies.clear();
+	}
+	
+	/** Restitution of the contacts we generate from our next step on */
+	protected void setRestitution(float r)
+	{
+		contacts.setRestitution(r);
+	}
+	
+	/** Called by world between steps when it changed one of our bodies, so we do not skip our next step */
+	protected void bodyChanged()
+	{
+		activeBodies++;
+	}
+	
+	/** Called by world between steps when it moved one of our bodies */
+	protected void bodyMoved()
+	{
+		activeBodies++;
+		treeStale = true;
+	}
+	
+	/** Sensor overlaps we found this step, see SensorTracker. Only read between steps */
+	protected long[] sensorPairs()
+	{
+		return sensorPairs;
+	}
+	
+	protected int sensorPairCount()
+	{
+		return sensorPairCount;
+	}
+	
+	/** Contacts we resolved this step, see ContactEventTracker. Only read between steps */
+	protected long[] contactKeys()
+	{
+		return contactKeys;
+	}
+	
+	protected float[] contactData()
+	{
+		return contactData;
+	}
+	
+	protected int contactRecordCount()
+	{
+		return contactRecordCount;
+	}
+	
+	/** Number of bullets we stopped at their time of impact in our last integrate phase */
+	protected int bulletsWithTimeLeft()
+	{
+		return bulletsWithTimeLeft;
+	}
+	
+	/** Number of bullets we had at our last tree rebuild */
+	protected int bulletCount()
+	{
+		return bulletCount;
+	}
+	
+	/** Skip our integrate and contact phases (and sleeping bodies) while nothing moves here */
+	protected void setSkipIfIdle(boolean skip)
+	{
+		skipIfIdle = skip;
+	}
+	
+	/** Make speculative contacts from our next step on */
+	protected void setSpeculativeContacts(boolean on)
+	{
+		speculative = on;
+	}
+	
+	/** Number of passes our contact solver makes from our next step on */
+	protected void setSolverIterations(int iterations)
+	{
+		contactSolver.setIterations(iterations);
+	}
+	
+	/** Return all bodies that belong to this thread */
+	public ArrayList<RigidBody> bodies()
+	{
+		return myBodies;
+	}
+	
+	/** Return the latest published ghost copies of our border bodies, only the first ghostCount() are valid */
+	public RigidBody[] ghosts()
+	{
+		return ghosts;
+	}
+	
+	public int ghostCount()
+	{
+		return ghostCount;
+	}
+	
+	public QuadTreeNode treeRoot()
+	{
+		return myTreeRoot;
+	}
+	
+	/** True if nothing moved during our last step and nothing is waiting to be handed to us */
+	protected boolean isIdle()
+	{
+		return activeBodies == 0 && inbound.isEmpty();
+	}
+	
+	public boolean isProcessing()
+	{
+		return isProcessing;
+	}
+	
+	public QuadTreeNode quadTree()
+	{
+		return myTreeRoot;
+	}
+	
+	/** Finds the pairs of our bodies that are touching or could touch within the next step and makes
+	 * their contacts. Each body queries our tree around its bounds grown by how far it and the fastest
+	 * of our bodies can move, our tree is as of the end of the last step so it also allows for how far
+	 * bodies moved since. Bodies leaving us this step are still in our tree and query it too.
+	 * Reused every step, nothing is allocated */
+	private class SpeculativePairs implements BodyVisitor
+	{
+		private RigidBody body;
+		private float bodyMargin;
+		private float dt;
+		
+		void findAll(float step)
+		{
+			dt = step;
+			
+			float maxMargin = 0;
+			for (int i = 0; i < myBodies.size() + outbound.size(); i++)
+				maxMargin = Math.max(maxMargin, FineCollision.speculativeMargin(bodyAt(i), dt));
+			
+			for (int i = 0; i < myBodies.size() + outbound.size(); i++)
+			{
+				body = bodyAt(i);
+				bodyMargin = FineCollision.speculativeMargin(body, dt);
+				
+				float grow = bodyMargin + 2 * maxMargin;
+				Vector2 center = body.center();
+				BoundingBox box = body.bounds();
+				myTreeRoot.queryAABB(box.leftX(center) - grow, box.topY(center) - grow,
+						box.rightX(center) + grow, box.bottomY(center) + grow, this);
+			}
+			
+			body = null;
+		}
+		
+		/** Our body i, counting on into the bodies leaving us */
+		private RigidBody bodyAt(int i)
+		{
+			return i < myBodies.size() ? myBodies.get(i) : outbound.get(i - myBodies.size());
+		}
+		
+		public boolean visit(RigidBody other)
+		{
+			// every pair is found from both of its bodies, only take it from the one with the lower handle
+			if (other.id() <= body.id() || !body.canCollideWith(other))
+				return true;
+			if (body.isSensor() || other.isSensor())
+			{
+				sensorOverlap(body, other);
+				return true;
+			}
+			
+			FineCollision.getContactPoints(body, other, contacts,
+					bodyMargin + FineCollision.speculativeMargin(other, dt));
+			return true;
+		}
+	}
 }
 
 
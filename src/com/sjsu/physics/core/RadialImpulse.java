@@ -0,0 +1,141 @@
+package com.sjsu.physics.core;
+
+import com.sjsu.physics.collisiondetection.BodyVisitor;
+import com.sjsu.physics.shapes.PolyBody;
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+import com.sjsu.physics.utils.Vector2;
+
+/**
+ * Pushes every body within a radius of a center away from it, ie an explosion.
+ *
+ * The world runs it over a broadphase query of the blast's bounding box. Each body is pushed
+ * at its point closest to the center, along the line from the center to that point, so a body
+ * hit off its center of mass spins. Bodies further than the radius are left alone. Reused for
+ * every blast, nothing is allocated.
+ */
+class RadialImpulse implements BodyVisitor
+{
+	private World world;
+
+	private float cx;
+	private float cy;
+	private float radius;
+	private float strength;
+	private World.Falloff falloff;
+	private int pushed;
+
+	// Polygon vertices in world coords, and the closest point found
+	private float[] vx = new float[8];
+	private float[] vy = new float[8];
+	private Vector2 closest = new Vector2(0, 0);
+	private Vector2 edgePoint = new Vector2(0, 0);
+
+	RadialImpulse(World w)
+	{
+		world = w;
+	}
+
+	/** Push every body in the world within r of (x, y). Returns the number of bodies pushed */
+	int apply(float x, float y, float r, float s, World.Falloff f)
+	{
+		cx = x;
+		cy = y;
+		radius = r;
+		strength = s;
+		falloff = f;
+		pushed = 0;
+
+		world.queryAABB(x - r, y - r, x + r, y + r, this);
+		return pushed;
+	}
+
+	public boolean visit(RigidBody b)
+	{
+		if (b.hasInfiniteMass())
+			return true;
+
+		closestPoint(b);
+		float dx = closest.x - cx;
+		float dy = closest.y - cy;
+		float dist = (float) Math.sqrt(dx * dx + dy * dy);
+		if (dist > radius)
+			return true;
+
+		// falloff goes by how far the body is from the center, a body the center is in gets the full strength
+		float falloffScale = scale(dist / radius);
+
+		// the center is on or inside the body, push it away from its own center instead. That can be
+		// further away than radius in a large body, so it only gives the direction
+		if (dist == 0)
+		{
+			closest.set(b.center().x, b.center().y);
+			dx = closest.x - cx;
+			dy = closest.y - cy;
+			dist = (float) Math.sqrt(dx * dx + dy * dy);
+			if (dist == 0)
+				return true;
+		}
+
+		float j = strength * falloffScale / dist;
+		b.addImpulseAtPoint(dx * j, dy * j, closest.x, closest.y);
+		world.bodyChanged(b);
+		pushed++;
+		return true;
+	}
+
+	/** Fraction of the strength a body gets at fraction d of the radius */
+	private float scale(float d)
+	{
+		switch (falloff)
+		{
+		case LINEAR:
+			return 1 - d;
+		case QUADRATIC:
+			return (1 - d) * (1 - d);
+		default:
+			return 1;
+		}
+	}
+
+	/** Put the point of b closest to the center in closest, the center itself if it is inside b */
+	private void closestPoint(RigidBody b)
+	{
+		if (b.containsPoint(cx, cy))
+		{
+			closest.set(cx, cy);
+			return;
+		}
+
+		if (b.type() == BodyType.CIRCLE)
+		{
+			float dx = cx - b.center().x;
+			float dy = cy - b.center().y;
+			float s = b.bounds().radius() / (float) Math.sqrt(dx * dx + dy * dy);
+			closest.set(b.center().x + dx * s, b.center().y + dy * s);
+			return;
+		}
+
+		PolyBody p = (PolyBody) b;
+		int n = p.numVertices();
+		if (vx.length < n)
+		{
+			vx = new float[n];
+			vy = new float[n];
+		}
+		p.verticesWorld(vx, vy);
+
+		float best = Float.MAX_VALUE;
+		for (int i = 0; i < n; i++)
+		{
+			int k = (i + 1) % n;
+			Vector2.projectPointOntoEdgeToOut(cx, cy, vx[i], vy[i], vx[k], vy[k], edgePoint);
+			float d = Vector2.distanceSquared(cx, cy, edgePoint.x, edgePoint.y);
+			if (d < best)
+			{
+				best = d;
+				closest.set(edgePoint.x, edgePoint.y);
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.sjsu.physics.core;
+
+/** Blends the two most recent snapshots of a world so rendering stays smooth while physics
+ * steps at a low fixed rate.
+ * 
+ * The interpolator keeps its own copies of the previous and current snapshot and shows the
+ * world between them, one step behind the simulation. Bodies are matched by slot, a body that
+ * was not in the previous snapshot is shown where it is now. Alpha is either given (a caller
+ * that steps the world itself passes accumulator / dt) or worked out from how far the clock has
+ * got since the current snapshot was published, relative to the time between the last two.
+ */
+public class RenderInterpolator
+{
+	private World world;
+	private SnapshotReader reader;
+	private WorldSnapshot previous;
+	private WorldSnapshot current;
+	
+	// index of each slot's body in the previous snapshot, -1 if it was not there
+	private int[] previousIndex;
+	
+	private float[] x;
+	private float[] y;
+	private float[] angle;
+	private float alpha;
+	
+	public RenderInterpolator(World w)
+	{
+		world = w;
+		reader = world.newSnapshotReader();
+		previous = new WorldSnapshot(world.bodyCount());
+		current = new WorldSnapshot(world.bodyCount());
+		previousIndex = new int[Math.max(world.bodyCount(), 1)];
+		x = new float[previousIndex.length];
+		y = new float[previousIndex.length];
+		angle = new float[previousIndex.length];
+	}
+	
+	/** Pick up the newest snapshot (if any) and blend by the alpha the clock gives. Returns alpha */
+	public float update()
+	{
+		pull();
+		
+		long span = current.publishedNanos() - previous.publishedNanos();
+		float a = 1;
+		if (previous.publishedNanos() != 0 && span > 0)
+			a = (float) (System.nanoTime() - current.publishedNanos()) / span;
+		
+		interpolate(a);
+		return alpha;
+	}
+	
+	/** Pick up the newest snapshot (if any) and blend by the given alpha, 0 is the previous snapshot and 1 the current */
+	public void update(float a)
+	{
+		pull();
+		interpolate(a);
+	}
+	
+	/** Move current to previous when a new snapshot has been published */
+	private void pull()
+	{
+		if (!reader.hasNew())
+			return;
+		
+		WorldSnapshot swap = previous;
+		previous = current;
+		current = swap;
+		current.copy(reader.latest());
+		
+		// index the previous snapshot by slot
+		int slots = 0;
+		for (int i = 0; i < previous.size(); i++)
+			slots = Math.max(slots, previous.slot(i) + 1);
+		for (int i = 0; i < current.size(); i++)
+			slots = Math.max(slots, current.slot(i) + 1);
+		
+		if (slots > previousIndex.length)
+			previousIndex = new int[slots * 2];
+		for (int i = 0; i < slots; i++)
+			previousIndex[i] = -1;
+		for (int i = 0; i < previous.size(); i++)
+			previousIndex[previous.slot(i)] = i;
+		
+		if (current.size() > x.length)
+		{
+			x = new float[current.size() * 2];
+			y = new float[x.length];
+			angle = new float[x.length];
+		}
+	}
+	
+	private void interpolate(float a)
+	{
+		alpha = Math.max(0, Math.min(1, a));
+		
+		for (int i = 0; i < current.size(); i++)
+		{
+			int p = previousIndex[current.slot(i)];
+			
+			// new body, or the slot now holds a different body
+			if (p < 0 || previous.handle(p) != current.handle(i))
+			{
+				x[i] = current.x(i);
+				y[i] = current.y(i);
+				angle[i] = current.angle(i);
+				continue;
+			}
+			
+			x[i] = previous.x(p) + (current.x(i) - previous.x(p)) * alpha;
+			y[i] = previous.y(p) + (current.y(i) - previous.y(p)) * alpha;
+			
+			// turn the short way round, angles are kept in (-PI, PI]
+			float turn = current.angle(i) - previous.angle(p);
+			if (turn > Math.PI)
+				turn -= 2 * Math.PI;
+			else if (turn < -Math.PI)
+				turn += 2 * Math.PI;
+			angle[i] = previous.angle(p) + turn * alpha;
+		}
+	}
+	
+	/** The snapshot being blended towards. Body i here is body i of the interpolated arrays */
+	public WorldSnapshot snapshot()
+	{
+		return current;
+	}
+	
+	public int size()
+	{
+		return current.size();
+	}
+	
+	public float alpha()
+	{
+		return alpha;
+	}
+	
+	public float x(int i)
+	{
+		return x[i];
+	}
+	
+	public float y(int i)
+	{
+		return y[i];
+	}
+	
+	public float angle(int i)
+	{
+		return angle[i];
+	}
+	
+	/** Stop receiving snapshots from the world */
+	public void close()
+	{
+		world.removeSnapshotReader(reader);
+	}
+}
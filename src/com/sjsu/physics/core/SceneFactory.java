@@ -0,0 +1,11 @@
+package com.sjsu.physics.core;
+
+/*
+ * Builds the starting scene of one ensemble run.
+ * Bodies are added to the (empty) world, randomness must come
+ * from run.random() so a run can be repeated from its seed.
+ */
+public interface SceneFactory
+{
+	void build(World world, EnsembleRun run);
+}
@@ -0,0 +1,13 @@
+package com.sjsu.physics.core;
+
+/*
+ * Told when a body starts or stops overlapping a sensor body. Bodies are given
+ * by handle, world.body(handle) returns null for a body removed since. Called
+ * on the thread that stepped the world, once the step is done.
+ */
+public interface SensorListener
+{
+	void sensorEntered(World world, int sensor, int other);
+
+	void sensorExited(World world, int sensor, int other);
+}
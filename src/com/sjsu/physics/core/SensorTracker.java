@@ -0,0 +1,87 @@
+package com.sjsu.physics.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns the sensor overlaps the physics threads find each step into enter and exit events.
+ *
+ * Each overlap is a long key, BodySlotMap.pairKey of the sensor's handle and the other body's.
+ * Once a step is done the keys of every thread are gathered and sorted, duplicates dropped, and
+ * a single merge against last step's sorted keys finds the pairs that are new (entered) and the
+ * ones that are gone (exited). A pair whose body was removed counts as gone.
+ * Nothing is allocated once the arrays have grown to fit.
+ */
+class SensorTracker
+{
+	private long[] current = new long[16];
+	private int currentCount;
+	private long[] previous = new long[16];
+	private int previousCount;
+
+	/** Gather this step's overlaps from every thread and report what changed to listener, if any */
+	void update(World world, List<PhysicsThread> threads, SensorListener listener)
+	{
+		currentCount = 0;
+		for (int i = 0; i < threads.size(); i++)
+		{
+			PhysicsThread t = threads.get(i);
+			long[] keys = t.sensorPairs();
+			for (int k = 0; k < t.sensorPairCount(); k++)
+			{
+				long key = keys[k];
+				if (world.body(BodySlotMap.firstOf(key)) == null || world.body(BodySlotMap.secondOf(key)) == null)
+					continue;
+
+				if (currentCount == current.length)
+					current = Arrays.copyOf(current, currentCount * 2);
+				current[currentCount++] = key;
+			}
+		}
+
+		Arrays.sort(current, 0, currentCount);
+
+		// drop duplicates, a pair can be found from both of its bodies
+		int unique = 0;
+		for (int i = 0; i < currentCount; i++)
+		{
+			if (unique == 0 || current[i] != current[unique - 1])
+				current[unique++] = current[i];
+		}
+		currentCount = unique;
+
+		if (listener != null)
+			dispatch(world, listener);
+
+		long[] swap = previous;
+		previous = current;
+		previousCount = currentCount;
+		current = swap;
+		currentCount = 0;
+	}
+
+	/** Merge the two sorted key lists, keys only in current entered and keys only in previous exited */
+	private void dispatch(World world, SensorListener listener)
+	{
+		int c = 0;
+		int p = 0;
+		while (c < currentCount || p < previousCount)
+		{
+			if (p == previousCount || (c < currentCount && current[c] < previous[p]))
+			{
+				listener.sensorEntered(world, BodySlotMap.firstOf(current[c]), BodySlotMap.secondOf(current[c]));
+				c++;
+			}
+			else if (c == currentCount || previous[p] < current[c])
+			{
+				listener.sensorExited(world, BodySlotMap.firstOf(previous[p]), BodySlotMap.secondOf(previous[p]));
+				p++;
+			}
+			else
+			{
+				c++;
+				p++;
+			}
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.sjsu.physics.core;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/** Runs many independent worlds, each at its own tick rate, on one shared pool of workers.
+ *
+ * A single scheduler thread hands out ticks earliest deadline first, so the world that is
+ * most overdue always runs next and no world can starve the others. A world never has more
+ * than one tick in flight. When more ticks are due than the host can run, at most
+ * maxInFlight ticks are queued on the workers and worlds that fall more than a whole tick
+ * behind drop the ticks they missed instead of piling them up. Dropped ticks are counted.
+ *
+ * Hosted worlds should be single threaded (see newWorld) so a tick runs entirely on one worker.
+ * A world split over several threads must not use the host's executor for its own steps.
+ */
+public class SimulationHost
+{
+	private ExecutorService workers;
+	private boolean ownsWorkers;
+	private int maxInFlight;
+	private AtomicInteger inFlight;
+
+	// Only the scheduler thread touches the schedule, other threads talk to it through the queues
+	private PriorityQueue<HostedWorld> schedule;
+	private ConcurrentLinkedQueue<HostedWorld> added;
+	private ConcurrentLinkedQueue<HostedWorld> finished;
+
+	private Thread scheduler;
+	private volatile boolean running;
+
+	/** A host with its own pool of the given number of daemon workers */
+	public SimulationHost(int numWorkers)
+	{
+		this(Executors.newFixedThreadPool(numWorkers, new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "simulation-host");
+				t.setDaemon(true);
+				return t;
+			}
+		}), numWorkers);
+		ownsWorkers = true;
+	}
+
+	/** A host that runs ticks on the given executor, with at most maxInFlight ticks queued on it at once */
+	public SimulationHost(ExecutorService executor, int maxInFlight)
+	{
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be at least 1, got " + maxInFlight);
+
+		workers = executor;
+		this.maxInFlight = maxInFlight;
+		inFlight = new AtomicInteger();
+		schedule = new PriorityQueue<HostedWorld>();
+		added = new ConcurrentLinkedQueue<HostedWorld>();
+		finished = new ConcurrentLinkedQueue<HostedWorld>();
+	}
+
+	/** A single threaded world, the cheapest kind to host */
+	public static World newWorld()
+	{
+		return new World(1, null);
+	}
+
+	/** Start stepping w at ticksPerSecond ticks a second, each tick split into substeps.
+	 * The returned handle can be used to remove the world and read its tick counts */
+	public HostedWorld add(World w, float ticksPerSecond, int substeps)
+	{
+		if (ticksPerSecond <= 0)
+			throw new IllegalArgumentException("Tick rate must be positive, got " + ticksPerSecond);
+		if (substeps < 1)
+			throw new IllegalArgumentException("Need at least one substep, got " + substeps);
+
+		HostedWorld h = new HostedWorld(this, w, ticksPerSecond, substeps);
+		added.offer(h);
+		LockSupport.unpark(scheduler);
+		return h;
+	}
+
+	/** Start the scheduler thread */
+	public synchronized void start()
+	{
+		if (scheduler != null)
+			return;
+
+		running = true;
+		scheduler = new Thread("simulation-host-scheduler")
+		{
+			public void run()
+			{
+				schedule();
+			}
+		};
+		scheduler.setDaemon(true);
+		scheduler.start();
+	}
+
+	/** Stop handing out ticks. Ticks already running finish, a pool the host created is shut down
+	 * once the scheduler has stopped, so it is never handed a tick after that */
+	public synchronized void stop()
+	{
+		running = false;
+		if (scheduler != null)
+		{
+			LockSupport.unpark(scheduler);
+			boolean interrupted = false;
+			while (scheduler.isAlive())
+			{
+				try
+				{
+					scheduler.join();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		if (ownsWorkers)
+			workers.shutdown();
+	}
+
+	/** Number of ticks queued or running on the workers */
+	public int inFlight()
+	{
+		return inFlight.get();
+	}
+
+	/** Scheduler loop. Dispatches due worlds earliest deadline first, parks until the next deadline otherwise */
+	private void schedule()
+	{
+		while (running)
+		{
+			HostedWorld h;
+			// new worlds are due right away
+			while ((h = added.poll()) != null)
+			{
+				h.deadline = System.nanoTime();
+				schedule.add(h);
+			}
+
+			// worlds whose tick finished go back on the schedule, unless they were removed
+			while ((h = finished.poll()) != null)
+			{
+				if (!h.removed)
+					schedule.add(h);
+			}
+
+			while ((h = schedule.peek()) != null && h.removed)
+				schedule.poll();
+
+			if (h == null)
+			{
+				LockSupport.park(this);
+				continue;
+			}
+
+			long now = System.nanoTime();
+			long wait = h.deadline - now;
+			if (wait > 0)
+			{
+				LockSupport.parkNanos(this, wait);
+				continue;
+			}
+
+			// back-pressure: the workers are full, wait for a tick to finish
+			if (inFlight.get() >= maxInFlight)
+			{
+				LockSupport.park(this);
+				continue;
+			}
+
+			schedule.poll();
+
+			// more than a whole tick late, skip the ticks we missed rather than running them back to back
+			long missed = (now - h.deadline) / h.period;
+			if (missed > 0)
+			{
+				h.droppedTicks += missed;
+				h.deadline += missed * h.period;
+			}
+			h.deadline += h.period;
+
+			inFlight.incrementAndGet();
+			try
+			{
+				workers.execute(h);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// an executor we were given was shut down under us, the world can not run anymore
+				inFlight.decrementAndGet();
+				h.failure = e;
+				h.removed = true;
+			}
+		}
+	}
+
+	/** Called on a worker once a world's tick is done */
+	private void tickFinished(HostedWorld h)
+	{
+		inFlight.decrementAndGet();
+		finished.offer(h);
+		LockSupport.unpark(scheduler);
+	}
+
+	/** A world running on a host, together with its schedule */
+	public static class HostedWorld implements Runnable, Comparable<HostedWorld>
+	{
+		private final SimulationHost host;
+		private final World world;
+		private final float dt;
+		private final int substeps;
+		private final long period;
+
+		// Only touched by the scheduler thread, or by the worker running the tick
+		private long deadline;
+		private volatile long ticks;
+		private volatile long droppedTicks;
+		private volatile RuntimeException failure;
+		private volatile boolean removed;
+
+		private HostedWorld(SimulationHost h, World w, float ticksPerSecond, int n)
+		{
+			host = h;
+			world = w;
+			dt = 1 / ticksPerSecond;
+			substeps = n;
+			period = (long) (1000000000L / ticksPerSecond);
+		}
+
+		public void run()
+		{
+			try
+			{
+				world.step(dt, substeps);
+				ticks++;
+			}
+			catch (RuntimeException e)
+			{
+				// a failing world is taken off the host, the others keep running
+				failure = e;
+				removed = true;
+			}
+			finally
+			{
+				host.tickFinished(this);
+			}
+		}
+
+		public int compareTo(HostedWorld o)
+		{
+			return deadline < o.deadline ? -1 : (deadline == o.deadline ? 0 : 1);
+		}
+
+		/** Stop stepping this world. A tick that is already running finishes */
+		public void remove()
+		{
+			removed = true;
+			LockSupport.unpark(host.scheduler);
+		}
+
+		public World world()
+		{
+			return world;
+		}
+
+		/** Number of ticks this world has run */
+		public long ticks()
+		{
+			return ticks;
+		}
+
+		/** Number of ticks skipped because the host was overloaded */
+		public long droppedTicks()
+		{
+			return droppedTicks;
+		}
+
+		/** The exception that took this world off the host, or null */
+		public RuntimeException failure()
+		{
+			return failure;
+		}
+
+		public boolean isRemoved()
+		{
+			return removed;
+		}
+	}
+}
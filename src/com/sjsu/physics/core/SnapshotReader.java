@@ -0,0 +1,54 @@
+package com.sjsu.physics.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** One reader's view of a world's snapshots, through a lock-free triple buffer.
+ * 
+ * The world writes the back snapshot and swaps it with the ready one after each step, the reader
+ * swaps the ready snapshot with its front one when it asks for the latest. The writer never waits
+ * for the reader and the reader never sees a snapshot that is being written. Each reader (renderer,
+ * AI, network...) gets its own SnapshotReader from World.newSnapshotReader, one thread per reader.
+ */
+public class SnapshotReader
+{
+	// set in the shared state when the ready snapshot has not been picked up yet
+	private static final int FRESH = 4;
+	
+	private WorldSnapshot[] snapshots;
+	private AtomicInteger ready;
+	private int back;
+	private int front;
+	
+	protected SnapshotReader(int capacity)
+	{
+		snapshots = new WorldSnapshot[3];
+		for (int i = 0; i < 3; i++)
+			snapshots[i] = new WorldSnapshot(capacity);
+		
+		front = 0;
+		ready = new AtomicInteger(1);
+		back = 2;
+	}
+	
+	/** Called by the world after each step: copy s into the back snapshot and make it the ready one */
+	protected void publish(WorldSnapshot s)
+	{
+		snapshots[back].copy(s);
+		back = ready.getAndSet(back | FRESH) & ~FRESH;
+	}
+	
+	/** The most recently published snapshot. It stays valid (unchanged) until the next call */
+	public WorldSnapshot latest()
+	{
+		if ((ready.get() & FRESH) != 0)
+			front = ready.getAndSet(front) & ~FRESH;
+		
+		return snapshots[front];
+	}
+	
+	/** True if a snapshot newer than the last one returned by latest() has been published */
+	public boolean hasNew()
+	{
+		return (ready.get() & FRESH) != 0;
+	}
+}
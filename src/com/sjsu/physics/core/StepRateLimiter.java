@@ -0,0 +1,281 @@
+package com.sjsu.physics.core;
+
+import com.sjsu.physics.utils.Globals;
+
+/** Runs a free-running world at a fixed step rate instead of as fast as it can.
+ * 
+ * Every step advances the world by exactly 1 / stepsPerSecond. A step that takes longer than
+ * the deadline degrades the world one level, following the overload policies in order: halve
+ * the substeps, halve the solver iterations, skip regions where nothing moved. After a run of
+ * steps well inside the deadline the world is restored one level. Ticks the driver could not
+ * make are dropped, never caught up, so a slow step can not snowball into a backlog.
+ */
+public class StepRateLimiter
+{
+	/** Ways to cut the cost of a step, tried in the order they are given */
+	public enum OverloadPolicy
+	{
+		DROP_SUBSTEPS, REDUCE_SOLVER_ITERATIONS, SKIP_IDLE_REGIONS
+	}
+	
+	// steps in a row that must take less than half the deadline before we restore a level
+	private static final int RECOVER_STEPS = 30;
+	
+	private float timeStep;
+	private long period;
+	private volatile long deadline;
+	private int baseSubsteps;
+	private int baseIterations;
+	private OverloadPolicy[] policies;
+	private volatile DegradeListener listener;
+	
+	// Settings changed from outside the driver, the world we run takes them on at its next step boundary
+	private volatile int newIterations;
+	private volatile OverloadPolicy[] newPolicies;
+	private volatile World world;
+	
+	private int level;
+	private int maxLevel;
+	private int substeps;
+	private int iterations;
+	private boolean skipIdleRegions;
+	private int fastSteps;
+	private long overruns;
+	private long droppedTicks;
+	
+	public StepRateLimiter(float stepsPerSecond, int substeps)
+	{
+		if (stepsPerSecond <= 0)
+			throw new IllegalArgumentException("Step rate must be positive, got " + stepsPerSecond);
+		if (substeps < 1)
+			throw new IllegalArgumentException("Need at least one substep, got " + substeps);
+		
+		timeStep = 1 / stepsPerSecond;
+		period = (long) (1000000000L / stepsPerSecond);
+		deadline = period;
+		baseSubsteps = substeps;
+		newIterations = Globals.CONTACT_SOLVER_DEFAULT_ITERATIONS;
+		newPolicies = OverloadPolicy.values();
+		takeSettings();
+	}
+	
+	/** Longest a step may take before the world is degraded, one step period by default */
+	public void setDeadline(long nanos)
+	{
+		deadline = nanos;
+	}
+	
+	/** Solver iterations at full quality, CONTACT_SOLVER_DEFAULT_ITERATIONS by default.
+	 * A world running this limiter takes it on at its next step boundary */
+	public void setSolverIterations(int n)
+	{
+		if (n < 1)
+			throw new IllegalArgumentException("Need at least one solver iteration, got " + n);
+		newIterations = n;
+		settingsChanged();
+	}
+	
+	/** The policies to degrade with, in order. None means the world is never degraded.
+	 * A world running this limiter takes them on at its next step boundary */
+	public void setPolicies(OverloadPolicy... p)
+	{
+		newPolicies = p.clone();
+		settingsChanged();
+	}
+	
+	/** Take on new settings now, or have the world we run take them on between its steps */
+	private void settingsChanged()
+	{
+		World w = world;
+		if (w == null)
+			takeSettings();
+		else
+			w.queueLimiterSettings(this);
+	}
+	
+	/** Take on the latest settings: work out the levels again and re-apply the current level (kept
+	 * if it still exists) to the world we run. Only called while that world is between steps */
+	protected void takeSettings()
+	{
+		int oldLevel = level;
+		baseIterations = newIterations;
+		policies = newPolicies;
+		
+		maxLevel = 0;
+		for (int i = 0; i < policies.length; i++)
+			maxLevel += levels(policies[i]);
+		
+		setLevel(Math.min(level, maxLevel));
+		
+		World w = world;
+		if (w != null)
+		{
+			apply(w);
+			if (level != oldLevel && listener != null)
+				listener.degradeChanged(w, this);
+		}
+	}
+	
+	public void setListener(DegradeListener l)
+	{
+		listener = l;
+	}
+	
+	/** Number of levels a policy can degrade by */
+	private int levels(OverloadPolicy p)
+	{
+		switch (p)
+		{
+		case DROP_SUBSTEPS:
+			return log2(baseSubsteps);
+		case REDUCE_SOLVER_ITERATIONS:
+			return log2(baseIterations);
+		default:
+			return 1;
+		}
+	}
+	
+	private static int log2(int n)
+	{
+		return 31 - Integer.numberOfLeadingZeros(n);
+	}
+	
+	/** Work out substeps, iterations and region skipping for a degrade level */
+	private void setLevel(int l)
+	{
+		level = l;
+		substeps = baseSubsteps;
+		iterations = baseIterations;
+		skipIdleRegions = false;
+		
+		for (int i = 0; i < policies.length && l > 0; i++)
+		{
+			int used = Math.min(l, levels(policies[i]));
+			l -= used;
+			
+			switch (policies[i])
+			{
+			case DROP_SUBSTEPS:
+				substeps = Math.max(1, baseSubsteps >> used);
+				break;
+			case REDUCE_SOLVER_ITERATIONS:
+				iterations = Math.max(1, baseIterations >> used);
+				break;
+			default:
+				skipIdleRegions = used > 0;
+				break;
+			}
+		}
+	}
+	
+	/** Push the current level's settings into the world */
+	protected void apply(World world)
+	{
+		world.setSolverIterations(iterations);
+		world.setSkipIdleRegions(skipIdleRegions);
+	}
+	
+	/** Called by a world between steps when it starts running this limiter */
+	protected void attach(World w)
+	{
+		world = w;
+		takeSettings();
+	}
+	
+	/** Put the world back to full quality, when this limiter is taken off it */
+	protected void restore(World world)
+	{
+		this.world = null;
+		world.setSolverIterations(baseIterations);
+		world.setSkipIdleRegions(false);
+	}
+	
+	/** Called by the driver with how long a step took. Degrades or restores the world as needed */
+	protected void stepFinished(World world, long nanos)
+	{
+		int oldLevel = level;
+		
+		if (nanos > deadline)
+		{
+			overruns++;
+			fastSteps = 0;
+			if (level < maxLevel)
+				setLevel(level + 1);
+		}
+		else if (nanos < deadline / 2 && level > 0)
+		{
+			if (++fastSteps >= RECOVER_STEPS)
+			{
+				fastSteps = 0;
+				setLevel(level - 1);
+			}
+		}
+		else
+			fastSteps = 0;
+		
+		if (level != oldLevel)
+		{
+			apply(world);
+			if (listener != null)
+				listener.degradeChanged(world, this);
+		}
+	}
+	
+	/** Called by the driver when it missed ticks */
+	protected void ticksDropped(long n)
+	{
+		droppedTicks += n;
+	}
+	
+	/** Seconds every step advances the world */
+	public float timeStep()
+	{
+		return timeStep;
+	}
+	
+	/** Nanoseconds between steps */
+	public long period()
+	{
+		return period;
+	}
+	
+	/** Current degrade level, 0 is full quality */
+	public int level()
+	{
+		return level;
+	}
+	
+	public boolean isDegraded()
+	{
+		return level > 0;
+	}
+	
+	/** Substeps per step at the current level */
+	public int substeps()
+	{
+		return substeps;
+	}
+	
+	/** Solver iterations at the current level */
+	public int solverIterations()
+	{
+		return iterations;
+	}
+	
+	public boolean skipsIdleRegions()
+	{
+		return skipIdleRegions;
+	}
+	
+	/** Steps that went over the deadline */
+	public long overruns()
+	{
+		return overruns;
+	}
+	
+	/** Ticks the driver skipped because it was behind */
+	public long droppedTicks()
+	{
+		return droppedTicks;
+	}
+}
@@ -0,0 +1,10 @@
+package com.sjsu.physics.core;
+
+/*
+ * Decides when an ensemble run is done. Checked after every step,
+ * run.steps() and run.time() tell how far the run has got.
+ */
+public interface StopCondition
+{
+	boolean shouldStop(World world, EnsembleRun run);
+}
@@ -2,8 +2,22 @@ package com.sjsu.physics.core;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 
+import com.sjsu.physics.collisiondetection.BodyVisitor;
+import com.sjsu.physics.collisiondetection.NeighborQuery;
 import com.sjsu.physics.collisiondetection.QuadTreeNode;
+import com.sjsu.physics.collisiondetection.RayCaster;
+import com.sjsu.physics.collisiondetection.RayHit;
 import com.sjsu.physics.shapes.*;
 import com.sjsu.physics.utils.Globals;
 import com.sjsu.physics.utils.Vector2;
@@ -13,146 +27,954 @@ import com.sjsu.physics.utils.Vector2;
  * to update them in parallel. Also does necessary
  * parallel procedures like sync'ing the threads,
  * starting or stopping, etc
+ * 
+ * Worlds hold no static state, so any number of them can live in one JVM.
+ * The physics threads of a world are partitions of its area, their step phases
+ * run on an executor shared by every world that does not bring its own
  */
 public class World 
 {
-        private int bodyCount;
-        private static ArrayList<PhysicsThread> threads;
-        private static QuadTreeNode worldRootNode;
-        
-        public World()
-        {
-                bodyCount = 0;
-                worldRootNode = new QuadTreeNode().init(null, Globals.GAME_RECT, 0);
-                threads = new ArrayList<PhysicsThread>();
-                
-                switch(Globals.NUM_PROCESSORS)
-                {
-                // single core is responsible for entire world
-                case 1:
-                        PhysicsThread thread = new PhysicsThread(this, 0, worldRootNode);
-                        threads.add(thread);
-                        break;
-                        
-                // quad core, each thread gets its own tree root
-                case 4:
-                        for (int i = 0; i < Globals.NUM_PROCESSORS; i++)
-                        {
-                                PhysicsThread t = new PhysicsThread(this, i, worldRootNode.children()[i]);
-                                t.setPriority(1);
-                                threads.add(t);
-                        }
-                        break;
-                default:
-                        throw new RuntimeException("Unsupported number of threads");
-                }
-        }
-        
-        public void startThreads()
-        {
-                for (int i = 0; i < threads.size(); i++)
-                        threads.get(i).start();
-        }
-        
-        
-        /** Physics loop. Runs all threads to do everything */
-        public void physicsStep()
-        {
-                /* Clear all objects from all the physics children's quadtrees */
-                worldRootNode.clearObjects();
-                
-                for (int i = 0; i < threads.size(); i++)
-                        threads.get(i).run();
-
-                // Wait for all threads to finish
-                int threadFinishCount = 0;
-                while (threadFinishCount < threads.size())
-                {
-                        threadFinishCount = 0;
-                        for (int i = 0; i < threads.size(); i++)
-                        {
-                                if (threads.get(i).isProcessing() == false)
-                                        threadFinishCount++;
-                        }
-                }
-        }
-        
-        
-        /** Determine which physics thread it should be in based on geometry, then add body to that thread */
-        public void addBodyToWorld(RigidBody b)
-        {
-                Vector2 center = b.center();
-                Rectangle bounds;
-                
-                // If the body is outside of our world then we do not add it
-                if (!Globals.GAME_RECT.contains(b.center().x(), b.center().y()))
-                        return;
-                
-                for (int i = 0; i < threads.size(); i++)
-                {
-                        bounds = threads.get(i).treeRoot().bounds();
-                        if (bounds.contains(center.x(), center.y()))
-                        {
-                                threads.get(i).insertBody(b);
-                                b.setProcess(i);
-                                b.setId(bodyCount++);
-                                return;
-                        }
-                }
-                
-                // if we can't find a process for it, just put it into process1
-                threads.get(0).insertBody(b);
-                b.setProcess(0);
-                b.setId(bodyCount++);                
-                return;
-        }
-        
-        /** Find the thread the body is located in and remove it.. costly.. */
-        public void removeBodyFromWorld(RigidBody b)
-        {
-                Vector2 center = b.center();
-                Rectangle bounds;
-                
-                for (int i = 0; i < threads.size(); i++)
-                {
-                        bounds = threads.get(i).treeRoot().bounds();
-                        if (bounds.contains(center.x(), center.y()))
-                                threads.get(i).removeBody(b);
-                }
-                
-                bodyCount--;
-        }
-        
-        /** Return all bodies in every thread and this rootNode */
-        public static ArrayList<RigidBody> allBodies()
-        {
-                ArrayList<RigidBody> allBodies = new ArrayList<RigidBody>(Globals.DEFAULT_BODY_SIZE * Globals.NUM_PROCESSORS);
-                
-                for (int i = 0; i < threads.size(); i++)
-                        allBodies.addAll(threads.get(i).bodies());
-                
-                return allBodies;
-        }
-        
-        /** Returns the thread # n */
-        public static PhysicsThread getThread(int n)
-        {
-                if (n > Globals.NUM_PROCESSORS)
-                        throw new IndexOutOfBoundsException("Thread number is higher than MaxThreads");
-                
-                PhysicsThread t = threads.get(n);
-                return t;
-        }
-        
-        /** Return the bodies that belong solely to the world node..
-         * that is bodies that are overlapping two or more processors */
-        public ArrayList<RigidBody> overlappingBodies()
-        {
-                return worldRootNode.bodies();
-        }
-        
-        public static QuadTreeNode getTreeRoot()
-        {
-                return worldRootNode;
-        }
-}
\ No newline at end of file
+	/** How the push of a radial impulse fades from its center to its radius */
+	public enum Falloff
+	{
+		CONSTANT, LINEAR, QUADRATIC
+	}
+	
+	// Executor shared by all worlds that were not given one, created on first use
+	private static ExecutorService sharedPool;
+	
+	private BodySlotMap bodies;
+	private ArrayList<PhysicsThread> threads;
+	private QuadTreeNode worldRootNode;
+	
+	// Runs the step phases of our threads, one reusable task per thread
+	private ExecutorService stepPool;
+	private ArrayList<PhaseTask> phaseTasks;
+	
+	private volatile Thread driver;
+	private volatile boolean isPaused;
+	private volatile boolean isShutdown;
+	private volatile boolean wakeRequested;
+	private volatile StepRateLimiter rateLimiter;
+	
+	// Changes queued from outside the step, applied at the start of the next one
+	private ConcurrentLinkedQueue<BodyCommand> commands;
+	
+	// Steps taken and seconds simulated so far, and the snapshot every reader is published a copy of
+	private long stepCount;
+	private float time;
+	private WorldSnapshot snapshot;
+	private CopyOnWriteArrayList<SnapshotReader> snapshotReaders;
+	
+	// Casts rays through our threads' trees for rayCast and circleCast, and finds neighbors in them
+	private RayCaster rayCaster;
+	private NeighborQuery neighborQuery;
+	private RadialImpulse radialImpulse;
+	private SensorTracker sensors;
+	private SensorListener sensorListener;
+	private ContactEventTracker contactEvents;
+	private ContactEventListener contactEventListener;
+	
+	/** A world split over NUM_PROCESSORS threads whose steps run on the executor shared by all worlds */
+	public World()
+	{
+		this(Globals.NUM_PROCESSORS, null);
+	}
+	
+	/** A world split over NUM_PROCESSORS threads whose steps run on the given executor. Null means the shared executor */
+	public World(ExecutorService executor)
+	{
+		this(Globals.NUM_PROCESSORS, executor);
+	}
+	
+	/** A world split over the given number of threads (1 or 4). A single threaded world steps on the
+	 * caller's thread and never touches the executor, which suits many small worlds on one host */
+	public World(int numThreads, ExecutorService executor)
+	{
+		stepPool = executor;
+		commands = new ConcurrentLinkedQueue<BodyCommand>();
+		snapshotReaders = new CopyOnWriteArrayList<SnapshotReader>();
+		bodies = new BodySlotMap(Globals.DEFAULT_BODY_SIZE * numThreads);
+		worldRootNode = new QuadTreeNode().init(null, Globals.GAME_RECT, 0);
+		threads = new ArrayList<PhysicsThread>();
+		
+		switch(numThreads)
+		{
+		// single core is responsible for entire world
+		case 1:
+			PhysicsThread thread = new PhysicsThread(this, 0, worldRootNode);
+			threads.add(thread);
+			break;
+			
+		// quad core, each thread gets its own tree root
+		case 4:
+			for (int i = 0; i < numThreads; i++)
+				threads.add(new PhysicsThread(this, i, worldRootNode.children()[i]));
+			break;
+		default:
+			throw new RuntimeException("Unsupported number of threads");
+		}
+		
+		phaseTasks = new ArrayList<PhaseTask>(threads.size());
+		for (int i = 0; i < threads.size(); i++)
+			phaseTasks.add(new PhaseTask(threads.get(i)));
+		
+		rayCaster = newRayCaster();
+		neighborQuery = newNeighborQuery();
+		radialImpulse = new RadialImpulse(this);
+		sensors = new SensorTracker();
+		contactEvents = new ContactEventTracker();
+	}
+	
+	/** Start a driver thread that steps the world free-running, each step as long as the last one took.
+	 * The driver parks while the world is paused, or while it is idle (nothing moved last step) until
+	 * a body is added or wake() is called. A world that was started this way can no longer be stepped by hand */
+	public synchronized void startThreads()
+	{
+		if (isShutdown)
+			throw new IllegalStateException("World has been shut down");
+		if (driver != null)
+			return;
+		
+		driver = new Thread("physics-driver")
+		{
+			public void run()
+			{
+				drive();
+			}
+		};
+		driver.start();
+	}
+	
+	/** Driver loop, runs until shutdown */
+	private void drive()
+	{
+		long timeStep = 0;
+		long nextTick = 0;
+		
+		while (!isShutdown)
+		{
+			if (isPaused)
+			{
+				LockSupport.park(this);
+				nextTick = 0;
+				continue;
+			}
+			
+			// nothing to do, sleep until woken (or for a while, in case a wake was missed)
+			if (!wakeRequested && isIdle())
+			{
+				LockSupport.parkNanos(this, Globals.IDLE_PARK_NANOS);
+				nextTick = 0;
+				continue;
+			}
+			
+			// a step boundary, so a limiter set since the last step runs this one
+			applyCommands();
+			StepRateLimiter limiter = rateLimiter;
+			if (limiter == null)
+			{
+				wakeRequested = false;
+				long startTime = System.nanoTime();
+				
+				// workaround to ensure that we are always moving forward (in case of large # bodies), but never
+				// moving forward too fast (in the case of small # bodies)
+				doStep(timeStep * Globals.NANOSEC_TO_SECONDS * 5, 1);
+				
+				timeStep = (System.nanoTime() - startTime);
+				continue;
+			}
+			
+			// fixed rate: wait for the next tick, drop the ticks we are too late for
+			long now = System.nanoTime();
+			if (nextTick == 0)
+				nextTick = now;
+			if (nextTick - now > 0)
+			{
+				LockSupport.parkNanos(this, nextTick - now);
+				continue;
+			}
+			
+			long missed = (now - nextTick) / limiter.period();
+			if (missed > 0)
+			{
+				limiter.ticksDropped(missed);
+				nextTick += missed * limiter.period();
+			}
+			nextTick += limiter.period();
+			
+			wakeRequested = false;
+			doStep(limiter.timeStep(), limiter.substeps());
+			
+			// a limiter taken off during the step must not push its settings back
+			if (rateLimiter == limiter)
+				limiter.stepFinished(this, System.nanoTime() - now);
+		}
+	}
+	
+	/** Run the driver at a fixed step rate with a deadline and overload policy, null goes back to
+	 * free-running. Queued like a body command, takes effect from the next step */
+	public void setStepRateLimiter(StepRateLimiter limiter)
+	{
+		queue(new BodyCommand(BodyCommand.SET_RATE_LIMITER, limiter));
+	}
+	
+	/** Called by our limiter when its settings changed, it takes them on at our next step boundary */
+	void queueLimiterSettings(StepRateLimiter limiter)
+	{
+		queue(new BodyCommand(BodyCommand.LIMITER_SETTINGS, limiter));
+	}
+	
+	/** Swap limiters between steps, the old one puts the world back to full quality */
+	private void installRateLimiter(StepRateLimiter limiter)
+	{
+		StepRateLimiter old = rateLimiter;
+		if (old == limiter)
+			return;
+		if (old != null)
+			old.restore(this);
+		if (limiter != null)
+			limiter.attach(this);
+		
+		rateLimiter = limiter;
+	}
+	
+	public StepRateLimiter stepRateLimiter()
+	{
+		return rateLimiter;
+	}
+	
+	/** Let threads where nothing moved last step sit out the integrate and contact phases */
+	public void setSkipIdleRegions(boolean skip)
+	{
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).setSkipIfIdle(skip);
+	}
+	
+	/** Stop the driver after its current step. The world keeps its state, resume() carries on */
+	public void pause()
+	{
+		isPaused = true;
+	}
+	
+	public void resume()
+	{
+		isPaused = false;
+		wake();
+	}
+	
+	/** Stop the driver for good and wait for its current step to finish.
+	 * Afterwards the world can no longer be started or stepped */
+	public void shutdown()
+	{
+		Thread d;
+		synchronized (this)
+		{
+			isShutdown = true;
+			d = driver;
+		}
+		
+		if (d == null || d == Thread.currentThread())
+			return;
+		
+		LockSupport.unpark(d);
+		try
+		{
+			d.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** Tell an idle driver there is work, ie after applying outside forces to bodies directly */
+	public void wake()
+	{
+		wakeRequested = true;
+		
+		Thread d = driver;
+		if (d != null)
+			LockSupport.unpark(d);
+	}
+	
+	public boolean isPaused()
+	{
+		return isPaused;
+	}
+	
+	public boolean isShutdown()
+	{
+		return isShutdown;
+	}
+	
+	/** True if nothing moved during the last step and no bodies or changes are waiting to be picked up */
+	public boolean isIdle()
+	{
+		for (int i = 0; i < threads.size(); i++)
+		{
+			if (!threads.get(i).isIdle())
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/** Step the world forward by exactly dt seconds, split into substeps equal steps, then return.
+	 * Each substep runs the phases of every physics thread in parallel on the executor and waits
+	 * for all of them between phases, so the result does not depend on thread timing.
+	 * Meant for headless use (servers, batch jobs), do not mix with startThreads.
+	 * One world must not be stepped from two threads at once, different worlds may */
+	public void step(float dt, int substeps)
+	{
+		if (isShutdown)
+			throw new IllegalStateException("World has been shut down");
+		if (driver != null)
+			throw new IllegalStateException("World is free-running, it cannot also be stepped");
+		if (substeps < 1)
+			throw new IllegalArgumentException("Need at least one substep, got " + substeps);
+		
+		doStep(dt, substeps);
+	}
+	
+	private void doStep(float dt, int substeps)
+	{
+		applyCommands();
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).prepareStep();
+		
+		float h = dt / substeps;
+		for (int i = 0; i < substeps; i++)
+		{
+			if (hasBullets())
+				runPhase(PhaseTask.SWEEP, h);
+			runPhase(PhaseTask.INTEGRATE, h);
+			runPhase(PhaseTask.CONTACTS, h);
+			runPhase(PhaseTask.HAND_OFF, h);
+			runPhase(PhaseTask.REFRESH, h);
+			
+			// bullets stopped at their time of impact move on once the contact there is resolved
+			for (int s = 0; s < Globals.MAX_TOI_SUBSTEPS && hasBulletTimeLeft(); s++)
+			{
+				runPhase(PhaseTask.SWEEP_REST, h);
+				runPhase(PhaseTask.INTEGRATE_REST, h);
+				runPhase(PhaseTask.CONTACTS, h);
+				runPhase(PhaseTask.HAND_OFF, h);
+				runPhase(PhaseTask.REFRESH, h);
+			}
+		}
+		
+		sensors.update(this, threads, sensorListener);
+		contactEvents.update(this, threads, contactEventListener);
+		stepCount++;
+		time += dt;
+		publishSnapshot();
+	}
+	
+	/** Whether any thread had bullets at its last tree rebuild */
+	private boolean hasBullets()
+	{
+		for (int i = 0; i < threads.size(); i++)
+		{
+			if (threads.get(i).bulletCount() > 0)
+				return true;
+		}
+		return false;
+	}
+	
+	/** Whether any thread stopped a bullet at its time of impact in its last integrate phase */
+	private boolean hasBulletTimeLeft()
+	{
+		for (int i = 0; i < threads.size(); i++)
+		{
+			if (threads.get(i).bulletsWithTimeLeft() > 0)
+				return true;
+		}
+		return false;
+	}
+	
+	/** A new reader of the snapshots published after every step. Until the next step is done
+	 * its latest snapshot is empty, an idle driver is woken to take that step */
+	public SnapshotReader newSnapshotReader()
+	{
+		SnapshotReader reader = new SnapshotReader(bodies.size());
+		snapshotReaders.add(reader);
+		wake();
+		return reader;
+	}
+	
+	/** Stop publishing to a reader */
+	public void removeSnapshotReader(SnapshotReader reader)
+	{
+		snapshotReaders.remove(reader);
+	}
+	
+	/** Copy the state of every body into each reader's back buffer. Only called between steps */
+	private void publishSnapshot()
+	{
+		if (snapshotReaders.isEmpty())
+			return;
+		
+		fillSnapshot();
+		for (int i = 0; i < snapshotReaders.size(); i++)
+			snapshotReaders.get(i).publish(snapshot);
+	}
+	
+	/** Walk the slot map in slot order, so a body keeps its place relative to the others between snapshots */
+	private void fillSnapshot()
+	{
+		if (snapshot == null)
+			snapshot = new WorldSnapshot(bodies.size());
+		
+		int slots = bodies.slotCount();
+		snapshot.begin(stepCount, time, System.nanoTime(), bodies.size());
+		for (int i = 0; i < slots; i++)
+		{
+			RigidBody b = bodies.bodyAt(i);
+			if (b != null)
+				snapshot.add(b);
+		}
+	}
+	
+	/** Number of steps taken so far */
+	public long stepCount()
+	{
+		return stepCount;
+	}
+	
+	/** Simulated seconds so far */
+	public float time()
+	{
+		return time;
+	}
+	
+	/** Physics loop. Steps every thread once by the default time step */
+	public void physicsStep()
+	{
+		step(Globals.DEFAULT_TIME_STEP, 1);
+	}
+	
+	/** Run one phase on every thread and wait until all of them are done */
+	private void runPhase(int phase, float dt)
+	{
+		// a single thread needs no workers
+		if (threads.size() == 1)
+		{
+			PhaseTask.run(threads.get(0), phase, dt);
+			return;
+		}
+		
+		if (stepPool == null)
+			stepPool = sharedPool();
+		
+		for (int i = 0; i < phaseTasks.size(); i++)
+			phaseTasks.get(i).set(phase, dt);
+		
+		try
+		{
+			List<Future<Void>> results = stepPool.invokeAll(phaseTasks);
+			for (int i = 0; i < results.size(); i++)
+				results.get(i).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while stepping the world", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Physics thread failed during step", e.getCause());
+		}
+	}
+	
+	/** The executor used by every world that was not given its own. Its threads are daemons */
+	public static synchronized ExecutorService sharedPool()
+	{
+		if (sharedPool == null)
+		{
+			sharedPool = Executors.newFixedThreadPool(Globals.NUM_PROCESSORS, new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "physics-step");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		
+		return sharedPool;
+	}
+	
+	
+	/** Queue a new body. It gets its handle now and joins the world at the start of the next step.
+	 * Returns the handle, or INVALID_HANDLE if the body is already in (or queued for) the world or outside of it */
+	public int queueAdd(RigidBody b)
+	{
+		if (b.id() != BodySlotMap.INVALID_HANDLE || !Globals.GAME_RECT.contains(b.center().x(), b.center().y()))
+			return BodySlotMap.INVALID_HANDLE;
+		
+		// only the handle is taken now, the body goes into the slot map at the step boundary
+		b.setId(bodies.reserve());
+		queue(new BodyCommand(BodyCommand.ADD, b.id(), b, 0, 0));
+		return b.id();
+	}
+	
+	/** Queue the removal of a body */
+	public void queueRemove(int handle)
+	{
+		queue(new BodyCommand(BodyCommand.REMOVE, handle, null, 0, 0));
+	}
+	
+	/** Queue setting a body's velocity */
+	public void queueSetVelocity(int handle, float vx, float vy)
+	{
+		queue(new BodyCommand(BodyCommand.SET_VELOCITY, handle, null, vx, vy));
+	}
+	
+	/** Queue an impulse through a body's center, its velocity changes by impulse / mass */
+	public void queueApplyImpulse(int handle, float jx, float jy)
+	{
+		queue(new BodyCommand(BodyCommand.APPLY_IMPULSE, handle, null, jx, jy));
+	}
+	
+	/** Queue moving a body straight to (x, y). Bodies moved outside the world are removed */
+	public void queueTeleport(int handle, float x, float y)
+	{
+		queue(new BodyCommand(BodyCommand.TELEPORT, handle, null, x, y));
+	}
+	
+	/** Queue an explosion at (x, y): every body within radius of it is pushed straight away from it with
+	 * an impulse of strength (scaled down by falloff with distance), at its point closest to the center.
+	 * Sleeping bodies are woken. Affected bodies are found through the broadphase at the next step */
+	public void applyRadialImpulse(float x, float y, float radius, float strength, Falloff falloff)
+	{
+		if (radius <= 0)
+			throw new IllegalArgumentException("Radius must be positive, got " + radius);
+		if (falloff == null)
+			throw new IllegalArgumentException("Falloff must not be null");
+		
+		queue(new BodyCommand(x, y, radius, strength, falloff));
+	}
+	
+	private void queue(BodyCommand c)
+	{
+		commands.offer(c);
+		wake();
+	}
+	
+	/** Apply every queued command, in order. Only called between steps */
+	private void applyCommands()
+	{
+		BodyCommand c;
+		while ((c = commands.poll()) != null)
+		{
+			if (c.type == BodyCommand.SET_RATE_LIMITER)
+			{
+				installRateLimiter(c.limiter);
+				continue;
+			}
+			if (c.type == BodyCommand.LIMITER_SETTINGS)
+			{
+				// the limiter may have been taken off since
+				if (c.limiter == rateLimiter)
+					c.limiter.takeSettings();
+				continue;
+			}
+			if (c.type == BodyCommand.RADIAL_IMPULSE)
+			{
+				radialImpulse.apply(c.x, c.y, c.radius, c.strength, c.falloff);
+				continue;
+			}
+			
+			if (c.type == BodyCommand.ADD)
+			{
+				// the body was removed before it was added, its handle is stale
+				if (c.body.id() != c.handle)
+					bodies.release(c.handle);
+				else
+				{
+					bodies.insert(c.handle, c.body);
+					routeBody(c.body);
+				}
+				continue;
+			}
+			
+			RigidBody b = bodies.get(c.handle);
+			
+			// stale handle, the body is gone
+			if (b == null)
+				continue;
+			
+			switch (c.type)
+			{
+			case BodyCommand.REMOVE:
+				removeBodyFromWorld(b);
+				break;
+			case BodyCommand.SET_VELOCITY:
+				b.setVelocity(c.x, c.y);
+				break;
+			case BodyCommand.APPLY_IMPULSE:
+				b.addImpulse(c.x, c.y);
+				break;
+			default:
+				// a sleeping body would stay put where it was dropped, and skipping threads leave it out
+				if (!b.isAwake())
+					b.setAwake(true);
+				b.setCenter(c.x, c.y);
+				break;
+			}
+			
+			// the owning thread may be skipping idle steps, let it know the body changed
+			if (c.type == BodyCommand.TELEPORT)
+				threads.get(b.process()).bodyMoved();
+			else if (c.type != BodyCommand.REMOVE)
+				threads.get(b.process()).bodyChanged();
+		}
+	}
+	
+	/** Called between steps after a body was changed from outside the step, so its thread does not skip it */
+	void bodyChanged(RigidBody b)
+	{
+		threads.get(b.process()).bodyChanged();
+	}
+	
+	/** Give a new body a handle, then hand it to the physics thread it belongs to based on geometry.
+	 * Safe to call from any thread, the body is picked up at that thread's next step boundary.
+	 * Bodies that are already in (or queued for) the world are ignored */
+	public void addBodyToWorld(RigidBody b)
+	{
+		if (b.id() != BodySlotMap.INVALID_HANDLE)
+			return;
+		
+		// If the body is outside of our world then we do not add it
+		if (!Globals.GAME_RECT.contains(b.center().x(), b.center().y()))
+			return;
+		
+		b.setId(bodies.add(b));
+		routeBody(b);
+		wake();
+	}
+	
+	/** Called by a physics thread at its step boundary for a body that left its bounds.
+	 * The body keeps its handle, only its owning thread changes */
+	protected void migrateBody(RigidBody b)
+	{
+		// a body that left the world is gone for good, free its handle
+		if (!Globals.GAME_RECT.contains(b.center().x(), b.center().y()))
+		{
+			bodies.remove(b.id());
+			b.setId(BodySlotMap.INVALID_HANDLE);
+			return;
+		}
+		
+		routeBody(b);
+	}
+	
+	/** Find the thread whose bounds hold the body's center and queue the body on it */
+	private void routeBody(RigidBody b)
+	{
+		Vector2 center = b.center();
+		Rectangle bounds;
+		
+		for (int i = 0; i < threads.size(); i++)
+		{
+			bounds = threads.get(i).treeRoot().bounds();
+			if (bounds.contains(center.x(), center.y()))
+			{
+				b.setProcess(i);
+				threads.get(i).insertBody(b);
+				return;
+			}
+		}
+		
+		// if we can't find a process for it, just put it into process1
+		b.setProcess(0);
+		threads.get(0).insertBody(b);
+	}
+	
+	/** Remove a body from the world in O(1), using its handle and owning thread */
+	public void removeBodyFromWorld(RigidBody b)
+	{
+		if (bodies.remove(b.id()) == null)
+		{
+			// still queued to be added, it is dropped when its add comes up
+			if (bodies.isReserved(b.id()))
+				b.setId(BodySlotMap.INVALID_HANDLE);
+			
+			// otherwise a stale handle, the body was already removed
+			return;
+		}
+		
+		threads.get(b.process()).removeBody(b);
+		b.setId(BodySlotMap.INVALID_HANDLE);
+	}
+	
+	/** Returns the body a handle refers to, or null if that body has been removed */
+	public RigidBody body(int handle)
+	{
+		return bodies.get(handle);
+	}
+	
+	/** Number of bodies in the world */
+	public int bodyCount()
+	{
+		return bodies.size();
+	}
+	
+	/** Restitution of every contact from the next step on. Call between steps */
+	public void setRestitution(float r)
+	{
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).setRestitution(r);
+	}
+	
+	/** Be told when bodies start and stop overlapping sensors (see RigidBody.setSensor), after every step */
+	public void setSensorListener(SensorListener l)
+	{
+		sensorListener = l;
+	}
+	
+	/** Be given the begin, persist and end contact events of every step with any, all at once in a
+	 * ContactEventBuffer. Null stops tracking contacts */
+	public void setContactEventListener(ContactEventListener l)
+	{
+		contactEventListener = l;
+	}
+	
+	/** Also make contacts for pairs that are still apart but could touch within the next step, and only
+	 * stop them closing the gap faster than that. Lets the world run larger steps without fast bodies
+	 * passing through each other. Pairs that would have hit within a step arrive touching and only
+	 * bounce off with the speed left, so restitution is weaker with it on. Call between steps */
+	public void setSpeculativeContacts(boolean on)
+	{
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).setSpeculativeContacts(on);
+	}
+	
+	/** Number of contact solver passes per step. Call between steps */
+	public void setSolverIterations(int iterations)
+	{
+		if (iterations < 1)
+			throw new IllegalArgumentException("Need at least one solver iteration, got " + iterations);
+		
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).setSolverIterations(iterations);
+	}
+	
+	/** Set the linear damping of every body currently in the world, leaving their angular damping. Call between steps */
+	public void setDamping(float linear)
+	{
+		for (int i = 0; i < bodies.slotCount(); i++)
+		{
+			RigidBody b = bodies.bodyAt(i);
+			if (b != null)
+				b.setDamping(linear);
+		}
+	}
+	
+	/** Set the angular damping of every body currently in the world, leaving their linear damping. Call between steps */
+	public void setAngularDamping(float angular)
+	{
+		for (int i = 0; i < bodies.slotCount(); i++)
+		{
+			RigidBody b = bodies.bodyAt(i);
+			if (b != null)
+				b.setAngularDamping(angular);
+		}
+	}
+	
+	/** Total linear kinetic energy of all bodies with finite mass */
+	public float kineticEnergy()
+	{
+		float energy = 0;
+		for (int i = 0; i < bodies.slotCount(); i++)
+		{
+			RigidBody b = bodies.bodyAt(i);
+			if (b != null && !b.hasInfiniteMass())
+				energy += 0.5f * b.mass() * b.velocity().magnitudeSquared();
+		}
+		
+		return energy;
+	}
+	
+	/** Visit every body whose bounding box overlaps the box (minX, minY) - (maxX, maxY), allocation free.
+	 * Uses the broadphase as it was left by the last step, so only call it between steps
+	 * (from the thread that steps the world, or while the world is paused) */
+	public void queryAABB(float minX, float minY, float maxX, float maxY, BodyVisitor visitor)
+	{
+		for (int i = 0; i < threads.size(); i++)
+		{
+			if (!threads.get(i).treeRoot().queryAABB(minX, minY, maxX, maxY, visitor))
+				return;
+		}
+	}
+	
+	/** Visit every body whose shape contains the point (x, y), ie the bodies under the mouse.
+	 * Only call it between steps, like queryAABB */
+	public void queryPoint(float x, float y, BodyVisitor visitor)
+	{
+		for (int i = 0; i < threads.size(); i++)
+		{
+			if (!threads.get(i).treeRoot().queryPoint(x, y, visitor))
+				return;
+		}
+	}
+	
+	/** Find the closest body the ray from (originX, originY) along (dirX, dirY) hits within maxDistance.
+	 * Returns whether anything was hit, the hit is written to hit. Only call it between steps, like queryAABB */
+	public boolean rayCast(float originX, float originY, float dirX, float dirY, float maxDistance, RayHit hit)
+	{
+		return rayCaster.rayCast(originX, originY, dirX, dirY, maxDistance, hit);
+	}
+	
+	/** Cast count rays at once, see RayCaster. Returns the number of rays that hit */
+	public int rayCast(float[] originX, float[] originY, float[] dirX, float[] dirY, int count, float maxDistance,
+			RigidBody[] hitBodies, float[] hitDistances)
+	{
+		return rayCaster.rayCast(originX, originY, dirX, dirY, count, maxDistance, hitBodies, hitDistances);
+	}
+	
+	/** Sweep a circle of the given radius from (originX, originY) along (dirX, dirY) and find the first body it hits */
+	public boolean circleCast(float originX, float originY, float radius, float dirX, float dirY, float maxDistance, RayHit hit)
+	{
+		return rayCaster.circleCast(originX, originY, radius, dirX, dirY, maxDistance, hit);
+	}
+	
+	/** A caster of its own for a thread that casts alongside others, ie AI running in parallel between steps.
+	 * The world's own rayCast and circleCast share one caster and must only be called from one thread */
+	public RayCaster newRayCaster()
+	{
+		return new RayCaster(treeRoots());
+	}
+	
+	/** Write the handles of the k bodies nearest to (x, y) into handles, nearest first, and their distances
+	 * into distances unless it is null. Returns the number written. Only call it between steps, like queryAABB */
+	public int nearest(float x, float y, int k, int[] handles, float[] distances)
+	{
+		return neighborQuery.nearest(x, y, k, handles, distances);
+	}
+	
+	/** Write the handles of the bodies within r of (x, y) into handles, nearest first, as many as fit.
+	 * Returns the number written. Only call it between steps, like queryAABB */
+	public int withinRadius(float x, float y, float r, int[] handles, float[] distances)
+	{
+		return neighborQuery.withinRadius(x, y, r, handles, distances);
+	}
+	
+	/** A neighbor query of its own for a thread that queries alongside others, like newRayCaster */
+	public NeighborQuery newNeighborQuery()
+	{
+		return new NeighborQuery(treeRoots());
+	}
+	
+	/** The root of every thread's tree */
+	QuadTreeNode[] treeRoots()
+	{
+		QuadTreeNode[] roots = new QuadTreeNode[threads.size()];
+		for (int i = 0; i < roots.length; i++)
+			roots[i] = threads.get(i).treeRoot();
+		
+		return roots;
+	}
+	
+	/** Return all bodies in every thread and this rootNode */
+	public ArrayList<RigidBody> allBodies()
+	{
+		ArrayList<RigidBody> allBodies = new ArrayList<RigidBody>(bodies.size());
+		
+		for (int i = 0; i < threads.size(); i++)
+			allBodies.addAll(threads.get(i).bodies());
+		
+		return allBodies;
+	}
+	
+	/** Number of physics threads the world is split over */
+	public int numThreads()
+	{
+		return threads.size();
+	}
+	
+	/** Returns the thread # n */
+	public PhysicsThread getThread(int n)
+	{
+		if (n >= threads.size())
+			throw new IndexOutOfBoundsException("Thread number is higher than MaxThreads");
+		
+		PhysicsThread t = threads.get(n);
+		return t;
+	}
+	
+	/** Return the bodies that belong solely to the world node..
+	 * that is bodies that are overlapping two or more processors */
+	public ArrayList<RigidBody> overlappingBodies()
+	{
+		return worldRootNode.bodies();
+	}
+	
+	public QuadTreeNode getTreeRoot()
+	{
+		return worldRootNode;
+	}
+	
+	/** Runs one phase of one physics thread on the step pool. Reused every phase */
+	private static class PhaseTask implements Callable<Void>
+	{
+		static final int INTEGRATE = 0;
+		static final int CONTACTS = 1;
+		static final int HAND_OFF = 2;
+		static final int REFRESH = 3;
+		static final int SWEEP = 4;
+		static final int SWEEP_REST = 5;
+		static final int INTEGRATE_REST = 6;
+		
+		private final PhysicsThread thread;
+		private int phase;
+		private float dt;
+		
+		PhaseTask(PhysicsThread t)
+		{
+			thread = t;
+		}
+		
+		void set(int p, float d)
+		{
+			phase = p;
+			dt = d;
+		}
+		
+		public Void call()
+		{
+			run(thread, phase, dt);
+			return null;
+		}
+		
+		static void run(PhysicsThread t, int phase, float dt)
+		{
+			switch (phase)
+			{
+			case INTEGRATE:
+				t.stepIntegrate(dt);
+				break;
+			case CONTACTS:
+				t.stepContacts(dt);
+				break;
+			case HAND_OFF:
+				t.stepHandOff();
+				break;
+			case SWEEP:
+				t.stepSweep(dt);
+				break;
+			case SWEEP_REST:
+				t.stepSweepRest();
+				break;
+			case INTEGRATE_REST:
+				t.stepIntegrateRest(dt);
+				break;
+			default:
+				t.stepRefresh();
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.sjsu.physics.core;
+
+import java.awt.Polygon;
+import java.util.Arrays;
+
+import com.sjsu.physics.shapes.BoundingBox;
+import com.sjsu.physics.shapes.PolyBody;
+import com.sjsu.physics.shapes.RigidBody;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+
+/** Read-only state of every body in a world at the end of one step, kept in flat primitive arrays.
+ * Polygon shapes are kept as local space vertices in one shared pool, so a reader can draw any body.
+ * 
+ * Body i of the snapshot is described by entry i of every array. A snapshot is filled by the
+ * world and then only read, readers get one from a SnapshotReader and may keep using it until
+ * they ask for the next one. The arrays only grow, so steady state publishing allocates nothing.
+ */
+public class WorldSnapshot
+{
+	private static final BodyType[] TYPES = BodyType.values();
+	
+	private int size;
+	private long step;
+	private float time;
+	private long publishedNanos;
+	
+	private int[] handles;
+	private int[] types;
+	private int[] processes;
+	private float[] x;
+	private float[] y;
+	private float[] angle;
+	private float[] velocityX;
+	private float[] velocityY;
+	private float[] halfWidth;
+	private float[] halfHeight;
+	private float[] radius;
+	
+	// local space polygon vertices of every polygon body, body i's run from vertexStart[i] for vertexCount[i]
+	private int[] vertexStart;
+	private int[] vertexCount;
+	private float[] vertexX;
+	private float[] vertexY;
+	private int numVertices;
+	
+	public WorldSnapshot(int capacity)
+	{
+		allocate(Math.max(capacity, 1));
+	}
+	
+	private void allocate(int capacity)
+	{
+		handles = new int[capacity];
+		types = new int[capacity];
+		processes = new int[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		halfWidth = new float[capacity];
+		halfHeight = new float[capacity];
+		radius = new float[capacity];
+		vertexStart = new int[capacity];
+		vertexCount = new int[capacity];
+		if (vertexX == null)
+		{
+			vertexX = new float[capacity * 4];
+			vertexY = new float[capacity * 4];
+		}
+	}
+	
+	/** Start filling the snapshot for a step, room for n bodies is made up front */
+	protected void begin(long stepNumber, float simulatedTime, long nanos, int n)
+	{
+		step = stepNumber;
+		time = simulatedTime;
+		publishedNanos = nanos;
+		size = 0;
+		numVertices = 0;
+		if (n > handles.length)
+			allocate(Math.max(n, handles.length * 2));
+	}
+	
+	/** Record a body. Only called between begin and the end of the step */
+	protected void add(RigidBody b)
+	{
+		if (size == handles.length)
+			grow();
+		
+		BoundingBox box = b.bounds();
+		handles[size] = b.id();
+		types[size] = b.type().ordinal();
+		processes[size] = b.process();
+		x[size] = b.center().x;
+		y[size] = b.center().y;
+		angle[size] = b.orientation();
+		velocityX[size] = b.velocity().x;
+		velocityY[size] = b.velocity().y;
+		halfWidth[size] = box.halfWidth();
+		halfHeight[size] = box.halfHeight();
+		radius[size] = box.radius();
+		vertexStart[size] = numVertices;
+		vertexCount[size] = 0;
+		
+		if (b.type() == BodyType.POLYGON)
+		{
+			Polygon p = ((PolyBody) b).polygon();
+			if (numVertices + p.npoints > vertexX.length)
+				growVertices(numVertices + p.npoints);
+			
+			for (int v = 0; v < p.npoints; v++)
+			{
+				vertexX[numVertices] = p.xpoints[v];
+				vertexY[numVertices] = p.ypoints[v];
+				numVertices++;
+			}
+			vertexCount[size] = p.npoints;
+		}
+		
+		size++;
+	}
+	
+	/** Make this snapshot a copy of s */
+	protected void copy(WorldSnapshot s)
+	{
+		begin(s.step, s.time, s.publishedNanos, s.size);
+		size = s.size;
+		System.arraycopy(s.handles, 0, handles, 0, size);
+		System.arraycopy(s.types, 0, types, 0, size);
+		System.arraycopy(s.processes, 0, processes, 0, size);
+		System.arraycopy(s.x, 0, x, 0, size);
+		System.arraycopy(s.y, 0, y, 0, size);
+		System.arraycopy(s.angle, 0, angle, 0, size);
+		System.arraycopy(s.velocityX, 0, velocityX, 0, size);
+		System.arraycopy(s.velocityY, 0, velocityY, 0, size);
+		System.arraycopy(s.halfWidth, 0, halfWidth, 0, size);
+		System.arraycopy(s.halfHeight, 0, halfHeight, 0, size);
+		System.arraycopy(s.radius, 0, radius, 0, size);
+		System.arraycopy(s.vertexStart, 0, vertexStart, 0, size);
+		System.arraycopy(s.vertexCount, 0, vertexCount, 0, size);
+		
+		if (s.numVertices > vertexX.length)
+			growVertices(s.numVertices);
+		numVertices = s.numVertices;
+		System.arraycopy(s.vertexX, 0, vertexX, 0, numVertices);
+		System.arraycopy(s.vertexY, 0, vertexY, 0, numVertices);
+	}
+	
+	private void growVertices(int n)
+	{
+		int capacity = Math.max(n, vertexX.length * 2);
+		vertexX = Arrays.copyOf(vertexX, capacity);
+		vertexY = Arrays.copyOf(vertexY, capacity);
+	}
+	
+	private void grow()
+	{
+		int capacity = handles.length * 2;
+		handles = Arrays.copyOf(handles, capacity);
+		types = Arrays.copyOf(types, capacity);
+		processes = Arrays.copyOf(processes, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		angle = Arrays.copyOf(angle, capacity);
+		velocityX = Arrays.copyOf(velocityX, capacity);
+		velocityY = Arrays.copyOf(velocityY, capacity);
+		halfWidth = Arrays.copyOf(halfWidth, capacity);
+		halfHeight = Arrays.copyOf(halfHeight, capacity);
+		radius = Arrays.copyOf(radius, capacity);
+		vertexStart = Arrays.copyOf(vertexStart, capacity);
+		vertexCount = Arrays.copyOf(vertexCount, capacity);
+	}
+	
+	/** Number of bodies in the snapshot */
+	public int size()
+	{
+		return size;
+	}
+	
+	/** Number of the world step this snapshot was taken after */
+	public long step()
+	{
+		return step;
+	}
+	
+	/** Simulated seconds at the end of that step */
+	public float time()
+	{
+		return time;
+	}
+	
+	/** System.nanoTime() when the snapshot was taken */
+	public long publishedNanos()
+	{
+		return publishedNanos;
+	}
+	
+	public int handle(int i)
+	{
+		return handles[i];
+	}
+	
+	/** Slot of body i in the world's slot map. Stays the same for as long as the body is in the world */
+	public int slot(int i)
+	{
+		return BodySlotMap.index(handles[i]);
+	}
+	
+	public BodyType type(int i)
+	{
+		return TYPES[types[i]];
+	}
+	
+	public int process(int i)
+	{
+		return processes[i];
+	}
+	
+	public float x(int i)
+	{
+		return x[i];
+	}
+	
+	public float y(int i)
+	{
+		return y[i];
+	}
+	
+	public float angle(int i)
+	{
+		return angle[i];
+	}
+	
+	public float velocityX(int i)
+	{
+		return velocityX[i];
+	}
+	
+	public float velocityY(int i)
+	{
+		return velocityY[i];
+	}
+	
+	public float halfWidth(int i)
+	{
+		return halfWidth[i];
+	}
+	
+	public float halfHeight(int i)
+	{
+		return halfHeight[i];
+	}
+	
+	/** Radius of a circle body (for other bodies the radius of their bounds) */
+	public float radius(int i)
+	{
+		return radius[i];
+	}
+	
+	/** Number of local space vertices of body i, 0 for anything but a polygon */
+	public int vertexCount(int i)
+	{
+		return vertexCount[i];
+	}
+	
+	/** Local space x of vertex v of body i. Rotate by angle(i) and add x(i) for world space */
+	public float vertexX(int i, int v)
+	{
+		return vertexX[vertexStart[i] + v];
+	}
+	
+	public float vertexY(int i, int v)
+	{
+		return vertexY[vertexStart[i] + v];
+	}
+}
@@ -0,0 +1,180 @@
+package com.sjsu.physics.examples;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+import com.sjsu.physics.core.RenderInterpolator;
+import com.sjsu.physics.core.WorldSnapshot;
+import com.sjsu.physics.shapes.RigidBody.BodyType;
+
+/**
+ * Draws a world snapshot in a handful of batched fills instead of one fill per body.
+ *
+ * Every body is appended to the reusable path of its color group (one group per process),
+ * then each group is filled once. Circles are built from four bezier arcs and polygons from
+ * the snapshot's local vertices, so after the paths have grown to the scene nothing is allocated
+ * per frame. An optional viewport skips bodies whose bounds are off screen.
+ *
+ * Groups are filled with the non-zero rule, so every subpath is built with the same winding, that of
+ * a counterclockwise PolyBody. Overlapping bodies of one color then add up instead of cancelling out.
+ */
+public class BatchRenderer
+{
+	// control point distance for a quarter circle made of one cubic bezier
+	private static final float KAPPA = 0.5522848f;
+
+	private Color[] colors;
+	private Path2D.Float[] groups;
+	private Path2D.Float boundsPath;
+	private Color boundsColor;
+	private boolean drawBounds;
+
+	private Rectangle2D viewport;
+	private int drawn;
+
+	/** A renderer with one color group per color, bodies are grouped by process */
+	public BatchRenderer(Color[] groupColors)
+	{
+		colors = groupColors.clone();
+		groups = new Path2D.Float[colors.length];
+		for (int i = 0; i < groups.length; i++)
+			groups[i] = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+
+		boundsPath = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+		boundsColor = Color.BLACK;
+	}
+
+	/** Draw the interpolated state of the interpolator's world */
+	public void render(Graphics2D g2, RenderInterpolator interpolator)
+	{
+		WorldSnapshot s = interpolator.snapshot();
+		begin();
+		for (int i = 0; i < s.size(); i++)
+			append(s, i, interpolator.x(i), interpolator.y(i), interpolator.angle(i));
+		end(g2);
+	}
+
+	/** Draw a snapshot as it is */
+	public void render(Graphics2D g2, WorldSnapshot s)
+	{
+		begin();
+		for (int i = 0; i < s.size(); i++)
+			append(s, i, s.x(i), s.y(i), s.angle(i));
+		end(g2);
+	}
+
+	private void begin()
+	{
+		for (int i = 0; i < groups.length; i++)
+			groups[i].reset();
+		boundsPath.reset();
+		drawn = 0;
+	}
+
+	/** Append body i of s, drawn at (x, y) turned by angle, to its group's path */
+	private void append(WorldSnapshot s, int i, float x, float y, float angle)
+	{
+		float hw = s.halfWidth(i);
+		float hh = s.halfHeight(i);
+
+		if (viewport != null && (x + hw < viewport.getMinX() || x - hw > viewport.getMaxX()
+				|| y + hh < viewport.getMinY() || y - hh > viewport.getMaxY()))
+			return;
+
+		Path2D.Float path = groups[Math.abs(s.process(i)) % groups.length];
+		if (s.type(i) == BodyType.CIRCLE)
+			appendCircle(path, x, y, s.radius(i));
+		else if (s.type(i) == BodyType.POLYGON && s.vertexCount(i) > 0)
+			appendPolygon(path, s, i, x, y, angle);
+
+		if (drawBounds)
+		{
+			boundsPath.moveTo(x - hw, y - hh);
+			boundsPath.lineTo(x + hw, y - hh);
+			boundsPath.lineTo(x + hw, y + hh);
+			boundsPath.lineTo(x - hw, y + hh);
+			boundsPath.closePath();
+		}
+
+		drawn++;
+	}
+
+	/** Winds with positive signed area, the same way as a counterclockwise polygon */
+	private void appendCircle(Path2D.Float path, float x, float y, float r)
+	{
+		float k = r * KAPPA;
+		path.moveTo(x + r, y);
+		path.curveTo(x + r, y + k, x + k, y + r, x, y + r);
+		path.curveTo(x - k, y + r, x - r, y + k, x - r, y);
+		path.curveTo(x - r, y - k, x - k, y - r, x, y - r);
+		path.curveTo(x + k, y - r, x + r, y - k, x + r, y);
+		path.closePath();
+	}
+
+	private void appendPolygon(Path2D.Float path, WorldSnapshot s, int i, float x, float y, float angle)
+	{
+		float cs = (float) Math.cos(angle);
+		float sn = (float) Math.sin(angle);
+		int n = s.vertexCount(i);
+
+		// PolyBody only checks the winding when the polygon is set, so go by the vertices as they are.
+		// Turning does not change the winding, so the local vertices are enough
+		float area = 0;
+		for (int v = 0, u = n - 1; v < n; u = v++)
+			area += s.vertexX(i, u) * s.vertexY(i, v) - s.vertexX(i, v) * s.vertexY(i, u);
+		boolean reverse = area < 0;
+
+		for (int v = 0; v < n; v++)
+		{
+			int k = reverse ? n - 1 - v : v;
+			float lx = s.vertexX(i, k);
+			float ly = s.vertexY(i, k);
+			float wx = lx * cs - ly * sn + x;
+			float wy = lx * sn + ly * cs + y;
+
+			if (v == 0)
+				path.moveTo(wx, wy);
+			else
+				path.lineTo(wx, wy);
+		}
+		path.closePath();
+	}
+
+	/** One fill per color group, one draw for all bounds */
+	private void end(Graphics2D g2)
+	{
+		Color old = g2.getColor();
+		for (int i = 0; i < groups.length; i++)
+		{
+			g2.setColor(colors[i]);
+			g2.fill(groups[i]);
+		}
+
+		if (drawBounds)
+		{
+			g2.setColor(boundsColor);
+			g2.draw(boundsPath);
+		}
+		g2.setColor(old);
+	}
+
+	/** Only draw bodies whose bounds reach into r, null draws everything */
+	public void setViewport(Rectangle2D r)
+	{
+		viewport = r;
+	}
+
+	/** Outline every body's bounding box */
+	public void setDrawBounds(boolean draw)
+	{
+		drawBounds = draw;
+	}
+
+	/** Number of bodies drawn in the last frame (after culling) */
+	public int drawn()
+	{
+		return drawn;
+	}
+}
@@ -10,7 +10,6 @@ import java.awt.event.MouseListener;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -19,12 +18,12 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 import com.sjsu.physics.collisiondetection.QuadTreeNode;
-import com.sjsu.physics.core.Contact;
+import com.sjsu.physics.core.ContactBuffer;
+import com.sjsu.physics.core.RenderInterpolator;
 import com.sjsu.physics.core.World;
 import com.sjsu.physics.shapes.Circle;
 import com.sjsu.physics.shapes.PolyBody;
 import com.sjsu.physics.shapes.RigidBody;
-import com.sjsu.physics.shapes.RigidBody.BodyType;
 import com.sjsu.physics.utils.Globals;
 import com.sjsu.physics.utils.Vector2;
 
@@ -549,69 +548,32 @@ class DrawingPanel extends JPanel
 	private int framesInLastSecond = 0;
 	private int framesInCurrentSecond = 0;
 
+	private BatchRenderer renderer = new BatchRenderer(new Color[] {COLORP0, COLORP1, COLORP2, COLORP3});
+	private RenderInterpolator interpolator;
+	private Rectangle2D.Float viewport = new Rectangle2D.Float();
+
 	public void paintComponent(Graphics g) 
 	{
 
 		super.paintComponent(g);
 		Graphics2D g2 = (Graphics2D) g;
 
-		//paint all bodies associated with it
-		ArrayList<RigidBody> bodies = World.allBodies();
-		for (int j = 0; j < bodies.size(); j++) 
+		if (interpolator == null)
 		{
-			if (bodies.get(j) == null)
-				continue;
-			
-			if (bodies.get(j).type() == BodyType.CIRCLE)
-			{
-				Circle c = (Circle) bodies.get(j);
-				Rectangle2D.Float bounds = new Rectangle2D.Float(c.center().x() - c.bounds().halfWidth(),
-						c.center().y() - c.bounds().halfHeight(), c.bounds().halfWidth() * 2, c.bounds().halfHeight() * 2);
-				Ellipse2D.Float geom = new Ellipse2D.Float(c.center().x() - c.bounds().radius(), 
-						c.center().y() - c.bounds().radius(), c.bounds().radius() * 2, c.bounds().radius() * 2);
-				
-				g2.setColor(getColor((RigidBody) c));
-				g2.fill(geom);
-				g2.draw(bounds);
-			}
-			else if (bodies.get(j).type() == BodyType.POLYGON)
-			{	
-				PolyBody b = (PolyBody) bodies.get(j);
-				Rectangle2D.Float bounds = new Rectangle2D.Float(b.center().x() - b.bounds().halfWidth(),
-						b.center().y() - b.bounds().halfHeight(), b.bounds().halfWidth() * 2, b.bounds().halfHeight() * 2);
-
-				g2.setColor(getColor((RigidBody) b));
-				g2.fillPolygon(b.polygonWorld());
-				g2.setColor(COLORBLACK);
-				g2.draw(bounds);
-								
-				//drawNormals(b, g2);
-			}
-			g2.setColor(COLORBLACK);
+			interpolator = new RenderInterpolator(ExampleGame.world);
+			renderer.setDrawBounds(true);
 		}
 
-		if (Globals.DRAW_QUADTREE)
-			drawQuadTree(World.getTreeRoot(), g2);
+		//paint all bodies, blended between the last two physics steps
+		interpolator.update();
+		viewport.setRect(0, 0, getWidth(), getHeight());
+		renderer.setViewport(viewport);
+		renderer.render(g2, interpolator);
 
-		g2.drawString("NumBodies: " + bodies.size(), 75, 55);	
-	}
-	
-	/** Get the color based on process number */
-	private Color getColor(RigidBody a)
-	{
-		int processId = a.process();
+		if (Globals.DRAW_QUADTREE)
+			drawQuadTree(ExampleGame.world.getTreeRoot(), g2);
 
-		switch(processId)
-		{
-		case 0:
-			return COLORP0;
-		case 1:
-			return COLORP1;
-		case 2:
-			return COLORP2;
-		default:
-			return COLORP3;
-		}
+		g2.drawString("NumBodies: " + interpolator.size(), 75, 55);	
 	}
 	
 	private void drawOrigin(Graphics2D g2)
@@ -622,7 +584,7 @@ class DrawingPanel extends JPanel
 		g2.draw(yLine);
 	}
 
-	private void drawContacts(ArrayList<Contact> contacts, Graphics2D g2)
+	private void drawContacts(ContactBuffer contacts, Graphics2D g2)
 	{
 		g2.setColor(new Color(0, 130, 200));
 		Vector2 center;
@@ -794,7 +756,7 @@ class ClickListener implements MouseListener
 		if (body != null)
 		{
 			body.setAcceleration(new Vector2(0, Globals.DEFAULT_GRAVITY));
-			ExampleGame.world.addBodyToWorld(body);
+			ExampleGame.world.queueAdd(body);
 		}
 	}
 
@@ -43,6 +43,19 @@ public class Circle extends RigidBody
 		bounds.setHalfWidth(rad);
 	}
 
+	@Override
+	protected RigidBody copyShape()
+	{
+		return new Circle(center().x(), center().y(), bounds.radius());
+	}
+
+	@Override
+	public boolean containsPoint(float x, float y)
+	{
+		float r = bounds.radius();
+		return Vector2.distanceSquared(x, y, center().x, center().y) <= r * r;
+	}
+
 	@Override
 	public void calculateMoment()
 	{
@@ -1,7 +1,6 @@
 package com.sjsu.physics.shapes;
 
 import java.awt.Polygon;
-import java.awt.Rectangle;
 import java.util.ArrayList;
 
 import com.sjsu.physics.utils.Globals;
@@ -14,6 +13,8 @@ public class PolyBody extends RigidBody
 {
 	private Polygon polygon = new Polygon();
 	private ArrayList<Vector2> normals;
+	private float[] normalsX;
+	private float[] normalsY;
 
 	public PolyBody(Polygon p, Vector2 cen)
 	{
@@ -29,6 +30,17 @@ public class PolyBody extends RigidBody
 		setPolygon(p);
 	}
 
+	/** Share the (never modified) polygon and normals of another PolyBody, used for ghost copies */
+	private PolyBody(PolyBody p)
+	{
+		setType(BodyType.POLYGON);
+		setCenter(p.center());
+		polygon = p.polygon;
+		normals = p.normals;
+		normalsX = p.normalsX;
+		normalsY = p.normalsY;
+	}
+
 	/** Polygon's vertices must be listed in counterclockwise order */
 	public void setPolygon(Polygon p)
 	{
@@ -56,6 +68,7 @@ public class PolyBody extends RigidBody
 		calcBounds();
 		calcNormals();
 		calculateMoment();
+		shapeChanged();
 	}
 
 	/** Calculate the bounds based on our body's polygon */
@@ -73,6 +86,8 @@ public class PolyBody extends RigidBody
 
 
 		normals = new ArrayList<Vector2>(polygon.npoints + 1);
+		normalsX = new float[polygon.npoints];
+		normalsY = new float[polygon.npoints];
 		for (int i = 0; i < polygon.npoints; i++)
 		{
 			int j = (i + 1) % polygon.npoints;
@@ -82,7 +97,10 @@ public class PolyBody extends RigidBody
 
 			// edge JV - IV, so normal is a 270 deg rotation, we are assuming
 			// polygons are ordered counter-clockwise
-			normals.add(jV.subtractBy(iV).rotate270());
+			Vector2 normal = jV.subtractBy(iV).rotate270();
+			normals.add(normal);
+			normalsX[i] = normal.x();
+			normalsY[i] = normal.y();
 		}
 
 		if (normals.size() != polygon.npoints)
@@ -92,14 +110,45 @@ public class PolyBody extends RigidBody
 	/** Checks if a point is within this polygon */
 	public boolean contains(Vector2 point)
 	{
-		point = this.state().TransformIntoSpaceOf(point);
-		ArrayList<Vector2> polyVertices = this.verticesWorld();
+		return containsPoint(point.x, point.y);
+	}
 
-		for (int i = 0; i < polyVertices.size(); i++)
+	/** Checks if the world space point (x, y) is within this (convex) polygon, whichever way it winds */
+	@Override
+	public boolean containsPoint(float x, float y)
+	{
+		if (polygon.npoints < 3)
+			return false;
+
+		// into body space: undo the translation then the rotation
+		float dx = x - center().x;
+		float dy = y - center().y;
+		float cs = state().cos();
+		float sn = state().sin();
+		float lx = dx * cs + dy * sn;
+		float ly = -dx * sn + dy * cs;
+
+		// inside if the point is on the same side of every edge
+		int side = 0;
+		for (int i = 0; i < polygon.npoints; i++)
 		{
-			Vector2 dist = point.subtractBy(polyVertices.get(i));
-			if (dist.dot(polyVertices.get(i)) > 0)
-				return false;	// separating axis found
+			int j = (i + 1) % polygon.npoints;
+			float ex = polygon.xpoints[j] - polygon.xpoints[i];
+			float ey = polygon.ypoints[j] - polygon.ypoints[i];
+			float c = Vector2.cross(ex, ey, lx - polygon.xpoints[i], ly - polygon.ypoints[i]);
+
+			if (c > 0)
+			{
+				if (side < 0)
+					return false;
+				side = 1;
+			}
+			else if (c < 0)
+			{
+				if (side > 0)
+					return false;
+				side = -1;
+			}
 		}
 		return true;
 	}
@@ -116,8 +165,9 @@ public class PolyBody extends RigidBody
 		Vector2 pt = point;
 		pt = pt.subtractBy(center());
 
+		// torque = offset cross force
 		this.addForce(force);
-		this.addTorque(pt.dot(force));
+		this.addTorque(pt.cross(force));
 	}
 
 	/** Return vertices in bodyCoords */
@@ -142,14 +192,25 @@ public class PolyBody extends RigidBody
 		for (int i = 0; i < polygon.npoints; i++)
 		{
 			Vector2 v = new Vector2(polygon.xpoints[i], polygon.ypoints[i]);
-			v = v.rotate(this.orientation());
-			v = v.addTo(this.center());
+			this.state().transformByToOut(v, v);
 			polyPoints.add(v);
 		}
 
 		return polyPoints;
 	}
 
+	/** Write vertices in worldCoords into outX / outY, which must hold numVertices() points */
+	public void verticesWorld(float[] outX, float[] outY)
+	{
+		this.state().transformToArrays(polygon.xpoints, polygon.ypoints, polygon.npoints, outX, outY);
+	}
+
+	/** Write the (unnormalized) edge normals in worldCoords into outX / outY */
+	public void normalsWorld(float[] outX, float[] outY)
+	{
+		this.state().rotateToArrays(normalsX, normalsY, polygon.npoints, outX, outY);
+	}
+
 	/** Number of vertices of our polygon */
 	public int numVertices()
 	{
@@ -170,11 +231,11 @@ public class PolyBody extends RigidBody
 		int[] xpointsWorld = new int[polygon.npoints];
 		int[] ypointsWorld = new int[polygon.npoints];
 
+		float cs = this.state().cos();
+		float sn = this.state().sin();
+
 		for (int i = 0; i < polygon.npoints; i++)
 		{
-			float cs = (float) Math.cos(this.orientation());
-			float sn = (float) Math.sin(this.orientation());
-
 			float x = polygon.xpoints[i] * cs - polygon.ypoints[i] * sn;
 			float y = polygon.xpoints[i] * sn + polygon.ypoints[i] * cs;
 			xpointsWorld[i] = (int) (x + center().x());
@@ -216,8 +277,9 @@ public class PolyBody extends RigidBody
 	/** Returns the normal in worldCoords */
 	public Vector2 normalWorld(int i)
 	{
-		Vector2 normal = normals.get(i);
-		return normal.rotate(orientation());
+		Vector2 normal = new Vector2(normalsX[i], normalsY[i]);
+		this.state().rotateByToOut(normal, normal);
+		return normal;
 	}
 
 	@Override
@@ -226,10 +288,33 @@ public class PolyBody extends RigidBody
 		// rotate the state matrix
 		super.rotateBy(rad);
 
-		// update the boundingBox
-		Rectangle p = this.rotatePolygon(orientation()).getBounds();
-		bounds.setHalfHeight(p.height / 2);
-		bounds.setHalfWidth(p.width / 2);
+		if (polygon.npoints == 0)
+			return;
+
+		// update the boundingBox, same integer extents rotatePolygon(orientation()).getBounds() gives
+		float cs = this.state().cos();
+		float sn = this.state().sin();
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < polygon.npoints; i++)
+		{
+			int x = (int) (polygon.xpoints[i] * cs - polygon.ypoints[i] * sn);
+			int y = (int) (polygon.xpoints[i] * sn + polygon.ypoints[i] * cs);
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		bounds.setHalfHeight((maxY - minY) / 2);
+		bounds.setHalfWidth((maxX - minX) / 2);
+	}
+
+	@Override
+	protected RigidBody copyShape()
+	{
+		return new PolyBody(this);
 	}
 
 	@Override
@@ -240,7 +325,7 @@ public class PolyBody extends RigidBody
 
 		if (inverseMass() == 0)
 		{
-			inverseMomentOfInertia = Globals.ZERO_VECTOR;
+			inverseMomentOfInertia.set(0, 0);
 			return;
 		}
 
@@ -29,11 +29,31 @@ public abstract class RigidBody
 
 	private boolean isAwake;
 	private boolean canSleep;
+	private boolean isBullet;
+	private boolean isSensor;
+	private float sweepTimeLeft;
+	private boolean subStepped;
 	private float motion;
 
+	// Which pairs may collide, see canCollideWith
+	private int collisionCategory;
+	private int collisionMask;
+	private int collisionGroup;
+
 	private BodyType type;
 	private int id;
 	private int process;
+	private int localIndex;
+
+	// Set when this body overlaps the edge of its thread's region, so other threads see a ghost of it
+	private boolean isBorder;
+
+	// The real body this is a read-only ghost copy of, null for real bodies
+	private RigidBody ghostOf;
+
+	// The two ghost copies of this body, ghostCopy refreshes them in turn
+	private RigidBody[] ghostCopies;
+	private int nextGhostCopy;
 	public int depth;
 
 	public RigidBody()
@@ -53,10 +73,16 @@ public abstract class RigidBody
 		inverseMomentOfInertia = new Vector2(0, 0);
 
 		type = BodyType.RIGIDBODY;
+		id = -1;
+		localIndex = -1;
 		isAwake = true;
 		canSleep = false;
 		motion = 0;
 
+		collisionCategory = Globals.DEFAULT_COLLISION_CATEGORY;
+		collisionMask = Globals.DEFAULT_COLLISION_MASK;
+		collisionGroup = 0;
+
 		setMass(Globals.DEFAULT_MASS);
 	}
 
@@ -69,6 +95,58 @@ public abstract class RigidBody
 	/** Recalculate the moment of inertia */
 	public abstract void calculateMoment();
 
+	/** Create a new body with the same shape as this one (state is copied by ghostCopy) */
+	protected abstract RigidBody copyShape();
+
+	/** Called by subclasses when their shape changed, so new ghost copies are made with it */
+	protected final void shapeChanged()
+	{
+		ghostCopies = null;
+	}
+
+	/** Check if the world space point (x, y) is inside this body's shape */
+	public abstract boolean containsPoint(float x, float y);
+
+	/**
+	 * Returns a read-only snapshot of this body for other threads to collide against.
+	 * The ghost carries the same handle and process as this body, and must never be
+	 * integrated or have its state changed. Two copies are reused in turn, so a ghost
+	 * stays unchanged until the call after next.
+	 */
+	public final RigidBody ghostCopy()
+	{
+		if (ghostCopies == null)
+			ghostCopies = new RigidBody[2];
+		if (ghostCopies[nextGhostCopy] == null)
+			ghostCopies[nextGhostCopy] = copyShape();
+
+		RigidBody ghost = ghostCopies[nextGhostCopy];
+		nextGhostCopy ^= 1;
+
+		ghost.bounds.setHalfWidth(bounds.halfWidth());
+		ghost.bounds.setHalfHeight(bounds.halfHeight());
+		ghost.state.position().set(state.position());
+		ghost.state.setAngle(state.angle());
+		ghost.velocity.set(velocity);
+		ghost.angularVelocity = angularVelocity;
+		ghost.inverseMass = inverseMass;
+		ghost.inverseMomentOfInertia.set(inverseMomentOfInertia);
+		ghost.damping = damping;
+		ghost.angularDamping = angularDamping;
+		ghost.isAwake = isAwake;
+		ghost.isSensor = isSensor;
+		ghost.subStepped = subStepped;
+		ghost.collisionCategory = collisionCategory;
+		ghost.collisionMask = collisionMask;
+		ghost.collisionGroup = collisionGroup;
+		ghost.type = type;
+		ghost.id = id;
+		ghost.process = process;
+		ghost.ghostOf = this;
+
+		return ghost;
+	}
+
 	/** Update function for this rigid body Essentially updates the pos & velocity each frame for time t */
 	public final void update(float dt)
 	{
@@ -76,15 +154,18 @@ public abstract class RigidBody
 			throw new IndexOutOfBoundsException("Trying to update for negative time value");
 
 		// Update linear acceleartion / velocity
-		acceleration = acceleration.addToScaled(netForce, inverseMass);
-		velocity = velocity.addToScaled(acceleration, dt).multiplyBy((float) Math.pow(damping, dt));
+		acceleration.addScaled(netForce, inverseMass);
+		velocity.addScaled(acceleration, dt);
+		if (damping != 1)
+			velocity.multiply((float) Math.pow(damping, dt));
 		if (velocity.magnitudeSquared() > 0)
-			setCenter(center().addToScaled(velocity, dt));
+			center().addScaled(velocity, dt);
 
 		// Update angular acceleration and velocity
 		float newAngAcc = netTorque + angularAcceleration;
 		angularVelocity += newAngAcc * dt;
-		angularVelocity = angularVelocity * (float) Math.pow(angularDamping, dt);
+		if (angularDamping != 1)
+			angularVelocity = angularVelocity * (float) Math.pow(angularDamping, dt);
 
 		// Update orientation
 		if (angularVelocity != 0)
@@ -108,14 +189,29 @@ public abstract class RigidBody
 		}
 	}
 
+	/** The velocity update(dt) will move this body with, written to out */
+	public final void predictVelocity(float dt, Vector2 out)
+	{
+		float ax = acceleration.x + netForce.x * inverseMass;
+		float ay = acceleration.y + netForce.y * inverseMass;
+		out.set(velocity.x + ax * dt, velocity.y + ay * dt);
+		if (damping != 1)
+			out.multiply((float) Math.pow(damping, dt));
+	}
+
+	/** The angular velocity update(dt) will turn this body with */
+	public final float predictAngularVelocity(float dt)
+	{
+		float w = angularVelocity + (netTorque + angularAcceleration) * dt;
+		if (angularDamping != 1)
+			w = w * (float) Math.pow(angularDamping, dt);
+		return w;
+	}
+
 	/** Rotate state matrix by rad radians */
 	public void rotateBy(float rad)
 	{
-		Vector2 row0 = state.xRow().rotate(rad);
-		Vector2 row1 = row0.rotate90();
-
-		state.setXRow(row0.x(), row0.y());
-		state.setYRow(row1.x(), row1.y());
+		state.rotate(rad);
 	}
 
 	/** Clears all forces and torques that are being applied to this object */
@@ -132,7 +228,7 @@ public abstract class RigidBody
 		if (inverseMass == 0)
 			return;
 
-		netForce = netForce.addTo(F);
+		netForce.add(F);
 		isAwake = true;
 	}
 
@@ -147,6 +243,39 @@ public abstract class RigidBody
 		isAwake = true;
 	}
 
+	/** Apply impulse (jx, jy) through the center, waking the body */
+	public final void addImpulse(float jx, float jy)
+	{
+		if (inverseMass == 0)
+			return;
+
+		if (!isAwake)
+			setAwake(true);
+
+		velocity.add(jx * inverseMass, jy * inverseMass);
+	}
+
+	/** Apply impulse (jx, jy) at the world space point (px, py), changing velocity and spin at once.
+	 * Wakes the body. The spin uses the polar moment, the sum of the two axis moments */
+	public final void addImpulseAtPoint(float jx, float jy, float px, float py)
+	{
+		if (inverseMass == 0)
+			return;
+
+		if (!isAwake)
+			setAwake(true);
+
+		velocity.add(jx * inverseMass, jy * inverseMass);
+
+		float ix = inverseMomentOfInertia.x;
+		float iy = inverseMomentOfInertia.y;
+		if (ix > 0 && iy > 0)
+		{
+			float torque = Vector2.cross(px - center().x, py - center().y, jx, jy);
+			angularVelocity += torque * (ix * iy / (ix + iy));
+		}
+	}
+
 	public final void setId(int i)
 	{
 		id = i;
@@ -157,14 +286,44 @@ public abstract class RigidBody
 		process = p;
 	}
 
+	/** Only to be called by the owning thread */
+	public final void setBorder(boolean border)
+	{
+		isBorder = border;
+	}
+
+	/** Seconds of the current substep a bullet stopped at its time of impact still has to move.
+	 * Only to be called by the owning thread */
+	public final void setSweepTimeLeft(float t)
+	{
+		sweepTimeLeft = t;
+	}
+
+	/** Set on a bullet moved in the current sub-step, only its contacts are made again.
+	 * Only to be called by the owning thread */
+	public final void setSubStepped(boolean moved)
+	{
+		subStepped = moved;
+	}
+
+	/** Index of this body in its owning thread's body list, -1 if it is not in one */
+	public final void setLocalIndex(int i)
+	{
+		localIndex = i;
+	}
+
+	/** Set the velocity, waking the body so a sleeping one is moved again */
 	public final void setVelocity(float x, float y)
 	{
+		if (!isAwake)
+			setAwake(true);
+
 		velocity.set(x, y);
 	}
 
 	public final void setVelocity(Vector2 v)
 	{
-		velocity.set(v.x(), v.y());
+		setVelocity(v.x(), v.y());
 	}
 
 	public final void addVelocity(Vector2 v)
@@ -254,11 +413,11 @@ public abstract class RigidBody
 			isAwake = true;
 
 			// Add a bit of motion to avoid it falling asleep immediately.
-			setVelocity(Globals.EPSILON, Globals.EPSILON);
+			velocity.set(Globals.EPSILON, Globals.EPSILON);
 		} else
 		{
 			isAwake = false;
-			setVelocity(0, 0);
+			velocity.set(0, 0);
 			this.setAngularVelocity(0);
 		}
 	}
@@ -272,16 +431,52 @@ public abstract class RigidBody
 			setAwake(true);
 	}
 
+	/** A bullet is swept for its time of impact every step so it cannot tunnel through thin bodies.
+	 * It stops there, and once that contact is resolved moves on by the rest of the step in a sub-step.
+	 * Costs a broadphase query per step and a sub-step per hit, so only flag small fast bodies */
+	public final void setBullet(boolean bullet)
+	{
+		isBullet = bullet;
+	}
+
+	/** A sensor only reports the bodies it overlaps (see World.setSensorListener), it never makes
+	 * contacts so nothing is pushed by it and it is pushed by nothing. Set between steps */
+	public final void setSensor(boolean sensor)
+	{
+		isSensor = sensor;
+	}
+
+	/**
+	 * Choose which bodies this one collides with, set between steps. Category holds the bits this body
+	 * is, mask the bits of the bodies it collides with, and a pair collides only if each one's category
+	 * is in the other's mask. A non-zero group overrides both: bodies of the same positive group always
+	 * collide and bodies of the same negative group never do (eg give all debris the group -1)
+	 */
+	public final void setCollisionFilter(int category, int mask, int group)
+	{
+		collisionCategory = category;
+		collisionMask = mask;
+		collisionGroup = group;
+	}
+
+	/** Check this body's and other's collision filters, false if the pair should never make contacts */
+	public final boolean canCollideWith(RigidBody other)
+	{
+		if (collisionGroup != 0 && collisionGroup == other.collisionGroup)
+			return collisionGroup > 0;
+
+		return (collisionCategory & other.collisionMask) != 0 && (other.collisionCategory & collisionMask) != 0;
+	}
+
 	public final Vector2 center()
 	{
 		return state.position();
 	}
 
-	/** Returns the angle row0 makes with the x axis */
+	/** Returns the angle row0 makes with the x axis (cached by the state matrix) */
 	public final float orientation()
 	{
-		float o = state.xRow().angle();
-		return o;
+		return state.angle();
 	}
 
 	public final int id()
@@ -296,6 +491,10 @@ public abstract class RigidBody
 	{
 		return process;
 	}
+	public final int localIndex()
+	{
+		return localIndex;
+	}
 	public final Vector2 velocity()
 	{
 		return velocity;
@@ -340,6 +539,47 @@ public abstract class RigidBody
 	{
 		return isAwake;
 	}
+	public final boolean isBorder()
+	{
+		return isBorder;
+	}
+	public final boolean isBullet()
+	{
+		return isBullet;
+	}
+	public final boolean isSensor()
+	{
+		return isSensor;
+	}
+	public final float sweepTimeLeft()
+	{
+		return sweepTimeLeft;
+	}
+	public final boolean subStepped()
+	{
+		return subStepped;
+	}
+	public final int collisionCategory()
+	{
+		return collisionCategory;
+	}
+	public final int collisionMask()
+	{
+		return collisionMask;
+	}
+	public final int collisionGroup()
+	{
+		return collisionGroup;
+	}
+
+	public final boolean isGhost()
+	{
+		return ghostOf != null;
+	}
+	public final RigidBody ghostOf()
+	{
+		return ghostOf;
+	}
 	public final boolean hasInfiniteMass()
 	{
 		if (inverseMass == 0)
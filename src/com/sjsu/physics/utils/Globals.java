@@ -24,12 +24,20 @@ public class Globals
 	/* globals for collision detection */
 	public static final float ANGULAR_TOLLERANCE = 5f;
 	public static final int MAX_ANGULAR_CAST_ITERATIONS = 20;
+	public static final float LINEAR_SLOP = .5f;
+	/* Sub-steps a bullet gets to move on after its time of impact, time it has left after that is dropped */
+	public static final int MAX_TOI_SUBSTEPS = 4;
 	public static final float DISTANCE_TO_REMOVE = 3; 
 	public static final int CONTACT_SOLVER_DEFAULT_ITERATIONS = 10;
+	public static final int DEFAULT_COLLISION_CATEGORY = 0x0001;
+	public static final int DEFAULT_COLLISION_MASK = 0xFFFFFFFF;
 
 	
 	/* Number of processors/threads to use */
 	public static final int NUM_PROCESSORS = 4;
+	
+	/* How long an idle free-running world parks before looking for work again (nanoseconds) */
+	public static final long IDLE_PARK_NANOS = 100000000L;
 
 	/* Quadrant to number values.. used in quadtree */
 	public static final int MAX_QUADTREE_DEPTH = 2;
@@ -53,6 +61,7 @@ public class Globals
 	public static final float NANOSEC_TO_MILLISEC = .000001f; 
 	public static final float MAX_TIME_STEP = 1 / 1f; 
 	public static final float MIN_TIME_STEP = 1 / 100000f; 
+	public static final float DEFAULT_TIME_STEP = 1 / 60f;
 
 	/* ============ For example Game =========== */
 	/* The game rect or entire world */
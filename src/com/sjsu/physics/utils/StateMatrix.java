@@ -1,50 +1,161 @@
 package com.sjsu.physics.utils;
 
+/**
+ * Position and orientation of a body.
+ * 
+ * The orientation angle and its cos / sin pair are cached and kept consistent
+ * with the two rows, so reading the orientation never needs an atan2 and
+ * rotating points never needs to recompute sin / cos.
+ */
 public class StateMatrix
 {
+	private static final float PI = (float) Math.PI;
+	private static final float TWO_PI = (float) (2 * Math.PI);
+
 	private Vector2 row0; // the x axis
 	private Vector2 row1; // y axis
 	private Vector2 position;
 
+	private float angle; // angle row0 makes with the x axis, in (-PI, PI]
+	private float cos;
+	private float sin;
+
 	public StateMatrix(Vector2 p, float a)
 	{
 		position = p;
-		row0 = Vector2.fromAngle(a);
-		row1 = row0.rotate90();
+		row0 = new Vector2();
+		row1 = new Vector2();
+		setAngle(a);
+	}
+
+	/** Set the orientation to angle a (radians) */
+	public void setAngle(float a)
+	{
+		// keep the angle in the same range atan2 would give us. Stepping by 2 PI would never
+		// end for Inf / NaN or for a float too large to change, so go through atan2 instead
+		if (a > PI || a <= -PI)
+		{
+			a = (float) Math.atan2(Math.sin(a), Math.cos(a));
+			if (a <= -PI)
+				a += TWO_PI;
+		}
+
+		angle = a;
+		cos = (float) Math.cos(a);
+		sin = (float) Math.sin(a);
+		row0.set(cos, sin);
+		row1.set(-sin, cos);
+	}
+
+	/** Rotate the orientation by rad radians */
+	public void rotate(float rad)
+	{
+		setAngle(angle + rad);
 	}
 
 	public Vector2 rotateIntoSpaceOf(Vector2 v)
 	{
-		return new Vector2(v.dot(row0), v.dot(row1));
+		Vector2 out = new Vector2();
+		rotateIntoSpaceOfToOut(v, out);
+		return out;
 	}
 
 	public Vector2 rotateBy(Vector2 vec)
 	{
-		Vector2 v0 = row0.multiplyBy(vec.x());
-		Vector2 v1 = row1.multiplyBy(vec.y());
-
-		return v0.addTo(v1);
+		Vector2 out = new Vector2();
+		rotateByToOut(vec, out);
+		return out;
 	}
 
 	public Vector2 TransformBy(Vector2 v)
 	{
-		Vector2 vec = rotateBy(v);
-
-		return vec.addTo(position);
+		Vector2 out = new Vector2();
+		transformByToOut(v, out);
+		return out;
 	}
 
 	public Vector2 TransformIntoSpaceOf(Vector2 v)
 	{
-		Vector2 vec = v.subtractBy(position);
+		Vector2 out = new Vector2();
+		transformIntoSpaceOfToOut(v, out);
+		return out;
+	}
+
+	/* out = (v dot row0, v dot row1). out may alias v */
+	public void rotateIntoSpaceOfToOut(Vector2 v, Vector2 out)
+	{
+		final float px = v.x * row0.x + v.y * row0.y;
+		out.y = v.x * row1.x + v.y * row1.y;
+		out.x = px;
+	}
+
+	/* out = row0 * v.x + row1 * v.y. out may alias v */
+	public void rotateByToOut(Vector2 v, Vector2 out)
+	{
+		final float px = row0.x * v.x + row1.x * v.y;
+		out.y = row0.y * v.x + row1.y * v.y;
+		out.x = px;
+	}
 
-		return rotateIntoSpaceOf(vec);
+	/* out = rotateBy(v) + position. out may alias v */
+	public void transformByToOut(Vector2 v, Vector2 out)
+	{
+		rotateByToOut(v, out);
+		out.add(position);
 	}
 
+	/* out = rotateIntoSpaceOf(v - position). out may alias v */
+	public void transformIntoSpaceOfToOut(Vector2 v, Vector2 out)
+	{
+		final float dx = v.x - position.x;
+		final float dy = v.y - position.y;
+		out.x = dx * row0.x + dy * row0.y;
+		out.y = dx * row1.x + dy * row1.y;
+	}
+
+	/**
+	 * Rotate n local points (lx, ly) by this orientation into outX / outY.
+	 * No trig is done here, the cached cos / sin pair is used for every point
+	 */
+	public void rotateToArrays(int[] lx, int[] ly, int n, float[] outX, float[] outY)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			outX[i] = lx[i] * cos - ly[i] * sin;
+			outY[i] = lx[i] * sin + ly[i] * cos;
+		}
+	}
+
+	public void rotateToArrays(float[] lx, float[] ly, int n, float[] outX, float[] outY)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			outX[i] = lx[i] * cos - ly[i] * sin;
+			outY[i] = lx[i] * sin + ly[i] * cos;
+		}
+	}
+
+	/** Rotate and translate n local points (lx, ly) into world coords in outX / outY */
+	public void transformToArrays(int[] lx, int[] ly, int n, float[] outX, float[] outY)
+	{
+		float px = position.x;
+		float py = position.y;
+		for (int i = 0; i < n; i++)
+		{
+			outX[i] = lx[i] * cos - ly[i] * sin + px;
+			outY[i] = lx[i] * sin + ly[i] * cos + py;
+		}
+	}
+
+	/** Copy m's position and orientation, nothing is shared with m */
 	public void set(StateMatrix m)
 	{
-		position = m.position();
-		row0 = m.xRow();
-		row1 = m.yRow();
+		position.set(m.position());
+		row0.set(m.xRow());
+		row1.set(m.yRow());
+		angle = m.angle();
+		cos = m.cos();
+		sin = m.sin();
 	}
 
 	public void setPosition(float x, float y)
@@ -52,14 +163,16 @@ public class StateMatrix
 		position.set(x, y);
 	}
 
+	/** Set the x axis directly, the y axis follows as a 90 degree rotation */
 	public void setXRow(float x, float y)
 	{
-		row0.set(x, y);
+		setAngle((float) Math.atan2(y, x));
 	}
 
+	/** Set the y axis directly, the x axis follows as a 270 degree rotation */
 	public void setYRow(float x, float y)
 	{
-		row1.set(x, y);
+		setAngle((float) Math.atan2(-x, y));
 	}
 
 	public Vector2 position()
@@ -77,4 +190,19 @@ public class StateMatrix
 		return row1;
 	}
 
+	public float angle()
+	{
+		return angle;
+	}
+
+	public float cos()
+	{
+		return cos;
+	}
+
+	public float sin()
+	{
+		return sin;
+	}
+
 }
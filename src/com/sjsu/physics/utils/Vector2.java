@@ -229,6 +229,216 @@ public class Vector2
 		return copy;
 	}
 
+	/* ================ In-place operations (mutate this vector, no allocation) ================ */
+
+	public void setZero()
+	{
+		x = 0f;
+		y = 0f;
+	}
+
+	/* invert this vector in place */
+	public void invertLocal()
+	{
+		x = -x;
+		y = -y;
+	}
+
+	/* Turns this vector into unit-length 1 in place, returns the old length */
+	public float normalizeLocal()
+	{
+		float mag = magnitude();
+		if (mag < Globals.EPSILON)
+			return 0f;
+
+		float invertedMag = 1f / mag;
+		x = x * invertedMag;
+		y = y * invertedMag;
+		return mag;
+	}
+
+	/* sum vec with this vector */
+	public void add(Vector2 vec)
+	{
+		x = x + vec.x;
+		y = y + vec.y;
+	}
+
+	public void add(float vx, float vy)
+	{
+		x = x + vx;
+		y = y + vy;
+	}
+
+	/* sum this vector with a vector that is scaled by variable scale */
+	public void addScaled(Vector2 vec, float scale)
+	{
+		x = x + vec.x * scale;
+		y = y + vec.y * scale;
+	}
+
+	/* subtract vec from this vector */
+	public void subtract(Vector2 vec)
+	{
+		x = x - vec.x;
+		y = y - vec.y;
+	}
+
+	public void subtract(float vx, float vy)
+	{
+		x = x - vx;
+		y = y - vy;
+	}
+
+	/* multiply a scalar with this vector */
+	public void multiply(float scalar)
+	{
+		x = x * scalar;
+		y = y * scalar;
+	}
+
+	/* divide this vector by a scalar */
+	public void divide(float scalar)
+	{
+		x = x / scalar;
+		y = y / scalar;
+	}
+
+	/* rotate this vector around it's origin by rad radians */
+	public void rotateLocal(float rad)
+	{
+		rotateLocal((float) Math.cos(rad), (float) Math.sin(rad));
+	}
+
+	/* rotate this vector by an already computed cos / sin pair */
+	public void rotateLocal(float cs, float sn)
+	{
+		float px = x * cs - y * sn;
+		float py = x * sn + y * cs;
+		x = px;
+		y = py;
+	}
+
+	/* rotate this vector by 90 degrees in place */
+	public void rotate90Local()
+	{
+		float px = -y;
+		y = x;
+		x = px;
+	}
+
+	/* rotate this vector by 270 degrees in place */
+	public void rotate270Local()
+	{
+		float px = y;
+		y = -x;
+		x = px;
+	}
+
+	/* ================ Out-parameter operations (write result into out) ================ */
+
+	/* out = a + b */
+	public final static void addToOut(Vector2 a, Vector2 b, Vector2 out)
+	{
+		out.x = a.x + b.x;
+		out.y = a.y + b.y;
+	}
+
+	/* out = a - b */
+	public final static void subtractToOut(Vector2 a, Vector2 b, Vector2 out)
+	{
+		out.x = a.x - b.x;
+		out.y = a.y - b.y;
+	}
+
+	/* out = a + b * scale */
+	public final static void addScaledToOut(Vector2 a, Vector2 b, float scale, Vector2 out)
+	{
+		out.x = a.x + b.x * scale;
+		out.y = a.y + b.y * scale;
+	}
+
+	/* out = (a + b) / 2 */
+	public final static void midPointToOut(Vector2 a, Vector2 b, Vector2 out)
+	{
+		out.x = (a.x + b.x) * .5f;
+		out.y = (a.y + b.y) * .5f;
+	}
+
+	/* out = v rotated by the given cos / sin pair */
+	public final static void rotateToOut(Vector2 v, float cs, float sn, Vector2 out)
+	{
+		final float px = v.x * cs - v.y * sn;
+		out.y = v.x * sn + v.y * cs;
+		out.x = px;
+	}
+
+	/* out = closest point to p on line segment AB (out may alias p, a or b) */
+	public final static void projectPointOntoEdgeToOut(Vector2 p, Vector2 a, Vector2 b, Vector2 out)
+	{
+		projectPointOntoEdgeToOut(p.x, p.y, a.x, a.y, b.x, b.y, out);
+	}
+
+	public final static void projectPointOntoEdgeToOut(float px, float py, float ax, float ay,
+			float bx, float by, Vector2 out)
+	{
+		float ex = bx - ax;
+		float ey = by - ay;
+		float eLenSq = ex * ex + ey * ey;
+
+		// degenerate edge, a and b are the same point
+		float t = 0f;
+		if (eLenSq > 0f)
+			t = ((px - ax) * ex + (py - ay) * ey) / eLenSq;
+
+		// clamp to edge bounds
+		t = Math.min(Math.max(t, 0), 1);
+
+		out.x = ax + ex * t;
+		out.y = ay + ey * t;
+	}
+
+	/* ================ Static float helpers ================ */
+
+	public final static float dot(float ax, float ay, float bx, float by)
+	{
+		return ax * bx + ay * by;
+	}
+
+	public final static float cross(float ax, float ay, float bx, float by)
+	{
+		return ax * by - ay * bx;
+	}
+
+	public final static float magnitudeSquared(float vx, float vy)
+	{
+		return vx * vx + vy * vy;
+	}
+
+	public final static float distanceSquared(float ax, float ay, float bx, float by)
+	{
+		float dx = bx - ax;
+		float dy = by - ay;
+		return dx * dx + dy * dy;
+	}
+
+	/* Squared distance from point P to line segment AB */
+	public final static float distanceToEdgeSquared(float px, float py, float ax, float ay, float bx, float by)
+	{
+		float ex = bx - ax;
+		float ey = by - ay;
+		float eLenSq = ex * ex + ey * ey;
+
+		float t = 0f;
+		if (eLenSq > 0f)
+			t = ((px - ax) * ex + (py - ay) * ey) / eLenSq;
+		t = Math.min(Math.max(t, 0), 1);
+
+		float dx = px - (ax + ex * t);
+		float dy = py - (ay + ey * t);
+		return dx * dx + dy * dy;
+	}
+
 	@Override
 	public String toString()
 	{